@@ -30,6 +30,14 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // Local tests construct DataManager, whose Handler does nothing off the device
+        unitTests.isReturnDefaultValues = true
+        unitTests.all {
+            // Benchmarks only run when asked for: ./gradlew test -Praybank.benchmarks=true
+            it.systemProperty("raybank.benchmarks", project.findProperty("raybank.benchmarks") ?: "false")
+        }
+    }
 }
 
 dependencies {
@@ -6,13 +6,13 @@ import android.widget.Switch;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.SessionRepository;
 
 /**
  * Account settings activity for app preferences.
  */
 public class AccountSettingsActivity extends AppCompatActivity {
-    private DataManager dataManager;
+    private SessionRepository session;
     private User currentUser;
 
     private Switch switchLanguage;
@@ -28,17 +28,22 @@ public class AccountSettingsActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setTitle(R.string.account_settings);
 
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
+        session = SessionRepository.getInstance(this);
+        // Read on the I/O thread if the user is not in memory yet
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
+            if (user == null) {
+                finish();
+                return;
+            }
 
-        if (currentUser == null) {
-            finish();
-            return;
-        }
-
-        initializeViews();
-        loadSettings();
-        setupClickListeners();
+            currentUser = user;
+            initializeViews();
+            loadSettings();
+            setupClickListeners();
+        });
     }
 
     private void initializeViews() {
@@ -66,16 +71,14 @@ public class AccountSettingsActivity extends AppCompatActivity {
     private void setupClickListeners() {
         switchLanguage.setOnCheckedChangeListener((buttonView, isChecked) -> {
             currentUser.setLanguage(isChecked ? "ms" : "en");
-            dataManager.saveUser(currentUser);
-            dataManager.setCurrentUser(currentUser);
+            session.markDirty();
             updateLanguageLabels();
             // Note: In a real app, you would restart the activity to apply language changes
         });
 
         switchBiometric.setOnCheckedChangeListener((buttonView, isChecked) -> {
             currentUser.setBiometricEnabled(isChecked);
-            dataManager.saveUser(currentUser);
-            dataManager.setCurrentUser(currentUser);
+            session.markDirty();
         });
     }
 
@@ -7,22 +7,27 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
 import com.example.raybank.model.User;
 import com.example.raybank.utils.CurrencyFormatter;
-import com.example.raybank.utils.DataManager;
-import java.util.Collections;
-import java.util.List;
+import com.example.raybank.utils.DateFormatter;
+import com.example.raybank.utils.SessionRepository;
+import com.example.raybank.utils.TransactionLog;
+import com.example.raybank.utils.TransactionPager;
 
 /**
  * Account statement activity showing transaction history.
  */
 public class AccountStatementActivity extends AppCompatActivity {
-    private DataManager dataManager;
+    // Rows from the end of the list at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private SessionRepository session;
     private User currentUser;
     private RecyclerView recyclerViewTransactions;
     private TextView textViewNoTransactions;
     private TransactionAdapter transactionAdapter;
+    private TransactionPager pager;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,37 +37,68 @@ public class AccountStatementActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setTitle(R.string.account_statement);
 
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
-
-        if (currentUser == null) {
-            finish();
-            return;
-        }
+        session = SessionRepository.getInstance(this);
+        // Read on the I/O thread if the user is not in memory yet
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
+            if (user == null) {
+                finish();
+                return;
+            }
 
-        initializeViews();
-        loadTransactions();
+            currentUser = user;
+            initializeViews();
+            loadTransactions();
+        });
     }
 
     private void initializeViews() {
         recyclerViewTransactions = findViewById(R.id.recyclerViewTransactions);
         textViewNoTransactions = findViewById(R.id.textViewNoTransactions);
 
-        recyclerViewTransactions.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerViewTransactions.setLayoutManager(layoutManager);
+        recyclerViewTransactions.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (pager != null && layoutManager.findLastVisibleItemPosition()
+                        >= pager.getTransactions().size() - PREFETCH_DISTANCE) {
+                    loadMoreTransactions();
+                }
+            }
+        });
     }
 
     private void loadTransactions() {
-        List<Transaction> transactions = currentUser.getTransactions();
+        TransactionPager newPager = new TransactionPager(session);
+        pager = newPager;
+        newPager.loadNextPage(added -> {
+            if (!isFinishing() && newPager == pager) {
+                showTransactions(newPager.getTransactions());
+            }
+        });
+    }
 
-        if (transactions == null || transactions.isEmpty()) {
+    private void loadMoreTransactions() {
+        TransactionPager currentPager = pager;
+        int start = currentPager.getTransactions().size();
+        currentPager.loadNextPage(added -> {
+            if (!isFinishing() && currentPager == pager && transactionAdapter != null && added > 0) {
+                transactionAdapter.notifyItemRangeInserted(start, added);
+            }
+        });
+    }
+
+    private void showTransactions(TransactionLog transactions) {
+        if (transactions.isEmpty()) {
             recyclerViewTransactions.setVisibility(android.view.View.GONE);
             textViewNoTransactions.setVisibility(android.view.View.VISIBLE);
         } else {
             recyclerViewTransactions.setVisibility(android.view.View.VISIBLE);
             textViewNoTransactions.setVisibility(android.view.View.GONE);
 
-            // Reverse to show latest first
-            Collections.reverse(transactions);
             transactionAdapter = new TransactionAdapter(transactions);
             recyclerViewTransactions.setAdapter(transactionAdapter);
         }
@@ -81,9 +117,9 @@ public class AccountStatementActivity extends AppCompatActivity {
      * Simple adapter for displaying transactions.
      */
     private class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.TransactionViewHolder> {
-        private List<Transaction> transactions;
+        private TransactionLog transactions;
 
-        public TransactionAdapter(List<Transaction> transactions) {
+        public TransactionAdapter(TransactionLog transactions) {
             this.transactions = transactions;
         }
 
@@ -96,8 +132,8 @@ public class AccountStatementActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(TransactionViewHolder holder, int position) {
-            Transaction transaction = transactions.get(position);
-            holder.bind(transaction);
+            // Pages are already latest first
+            holder.bind(transactions, position);
         }
 
         @Override
@@ -119,20 +155,31 @@ public class AccountStatementActivity extends AppCompatActivity {
                 textViewBalance = itemView.findViewById(R.id.textViewBalance);
             }
 
-            public void bind(Transaction transaction) {
-                String type = transaction.getType().equals("DEPOSIT") ? getString(R.string.deposit)
-                        : getString(R.string.withdraw);
-                textViewType.setText(type);
-
-                String amountPrefix = transaction.getType().equals("DEPOSIT") ? "+" : "-";
-                textViewAmount.setText(amountPrefix + CurrencyFormatter.formatRM(transaction.getAmount()));
-                textViewAmount.setTextColor(transaction.getType().equals("DEPOSIT")
-                        ? ContextCompat.getColor(itemView.getContext(), android.R.color.holo_green_dark)
-                        : ContextCompat.getColor(itemView.getContext(), android.R.color.holo_red_dark));
-
-                textViewDate.setText(transaction.getDate());
+            public void bind(TransactionLog transactions, int position) {
+                TransactionType type = transactions.getType(position);
+                boolean credit = type == TransactionType.DEPOSIT || type == TransactionType.TRANSFER_IN;
+                switch (type != null ? type : TransactionType.WITHDRAW) {
+                    case DEPOSIT:
+                        textViewType.setText(R.string.deposit);
+                        break;
+                    case WITHDRAW:
+                        textViewType.setText(R.string.withdraw);
+                        break;
+                    case TRANSFER:
+                        textViewType.setText(R.string.transfer);
+                        break;
+                    case TRANSFER_IN:
+                        textViewType.setText(R.string.transaction_transfer_received);
+                        break;
+                }
+
+                textViewAmount.setText((credit ? "+" : "-") + CurrencyFormatter.formatRM(transactions.getAmount(position)));
+                textViewAmount.setTextColor(ContextCompat.getColor(itemView.getContext(),
+                        credit ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
+
+                textViewDate.setText(DateFormatter.format(transactions.getTimestamp(position)));
                 textViewBalance.setText(getString(R.string.balance) + ": " +
-                        CurrencyFormatter.formatRM(transaction.getBalanceAfter()));
+                        CurrencyFormatter.formatRM(transactions.getBalanceAfter(position)));
             }
         }
     }
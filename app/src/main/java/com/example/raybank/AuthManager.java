@@ -1,6 +1,7 @@
 package com.example.raybank;
 
 import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
 import com.example.raybank.model.User;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -42,11 +43,11 @@ public class AuthManager {
         raynold.setFullName("Raynold Anak Kabai");
         raynold.setPhoneNumber("+60123456789");
         raynold.setAccountNumber("1234567890");
-        raynold.setBalance(5000.00);
+        raynold.setBalance(500000);
         raynold.setLanguage("ms");
 
         // Add some initial transactions for Raynold
-        Transaction t1 = new Transaction("DEPOSIT", 5000.00, 5000.00, "Initial Deposit");
+        Transaction t1 = new Transaction(TransactionType.DEPOSIT, 500000, 500000, "Initial Deposit");
         raynold.addTransaction(t1);
 
         hardcodedUsers.add(raynold);
@@ -59,11 +60,11 @@ public class AuthManager {
         siti.setFullName("Siti Nurhaliza binti Hassan");
         siti.setPhoneNumber("+60198765432");
         siti.setAccountNumber("0987654321");
-        siti.setBalance(10000.00);
+        siti.setBalance(1000000);
         siti.setLanguage("ms");
 
         // Add some initial transactions for Siti
-        Transaction t2 = new Transaction("DEPOSIT", 10000.00, 10000.00, "Initial Deposit");
+        Transaction t2 = new Transaction(TransactionType.DEPOSIT, 1000000, 1000000, "Initial Deposit");
         siti.addTransaction(t2);
 
         hardcodedUsers.add(siti);
@@ -76,11 +77,11 @@ public class AuthManager {
         kumar.setFullName("Kumar Rajesh");
         kumar.setPhoneNumber("+60167891234");
         kumar.setAccountNumber("5555666677");
-        kumar.setBalance(7500.50);
+        kumar.setBalance(750050);
         kumar.setLanguage("en");
 
         // Add some initial transactions for Kumar
-        Transaction t3 = new Transaction("DEPOSIT", 7500.50, 7500.50, "Initial Deposit");
+        Transaction t3 = new Transaction(TransactionType.DEPOSIT, 750050, 750050, "Initial Deposit");
         kumar.addTransaction(t3);
 
         hardcodedUsers.add(kumar);
@@ -1,83 +1,441 @@
 package com.example.raybank;
 
+import com.example.raybank.model.AccountSnapshot;
 import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.utils.IdGenerator;
+import com.example.raybank.utils.Money;
+import com.example.raybank.utils.TransactionLog;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * BankAccount class represents a simple bank account with deposit and withdrawal functionality.
  * Enhanced with transaction history tracking.
+ * Amounts are in sen, with overflow-checked arithmetic from {@link Money}.
+ *
+ * Safe to use from any number of threads without locking. The balance and the newest
+ * transaction live together in one entry that is not changed once published, so a deposit
+ * or withdrawal checks and updates the balance and appends to the history in a single
+ * compare-and-set.
+ * Entries are folded into a columnar {@link TransactionLog} when the history or summary
+ * is read, which is the only step that takes a lock.
  */
 public class BankAccount {
-    private double balance;
-    private List<Transaction> transactionHistory;
+    /**
+     * Outcome of {@link #applyBatch(List)}.
+     */
+    public enum Status {
+        SUCCESS,
+        /** An amount was not positive, or would overflow the balance. */
+        INVALID_AMOUNT,
+        /** A withdrawal was more than the balance left by the operations before it. */
+        INSUFFICIENT_FUNDS
+    }
+
+    /**
+     * One deposit or withdrawal to apply in a batch.
+     * Transfers also credit another account, so they go through
+     * {@link com.example.raybank.utils.LedgerEngine} instead.
+     */
+    public static final class Operation {
+        private final TransactionType type;
+        private final long amount;
+        private final String description;
+
+        private Operation(TransactionType type, long amount, String description) {
+            this.type = type;
+            this.amount = amount;
+            this.description = description;
+        }
+
+        /**
+         * @param amount The amount to deposit in sen
+         */
+        public static Operation deposit(long amount) {
+            return deposit(amount, "Deposit");
+        }
+
+        /**
+         * @param amount      The amount to deposit in sen
+         * @param description Description of the deposit
+         */
+        public static Operation deposit(long amount, String description) {
+            return new Operation(TransactionType.DEPOSIT, amount, description);
+        }
+
+        /**
+         * @param amount The amount to withdraw in sen
+         */
+        public static Operation withdraw(long amount) {
+            return withdraw(amount, "Withdrawal");
+        }
+
+        /**
+         * @param amount      The amount to withdraw in sen
+         * @param description Description of the withdrawal
+         */
+        public static Operation withdraw(long amount, String description) {
+            return new Operation(TransactionType.WITHDRAW, amount, description);
+        }
+
+        public TransactionType getType() {
+            return type;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Result of a batch, with the transactions it made when it was applied.
+     */
+    public static class Batch {
+        private final Status status;
+        private final int failedIndex;
+        private final List<Transaction> transactions;
+        private final long balance;
+
+        Batch(Status status, int failedIndex, List<Transaction> transactions, long balance) {
+            this.status = status;
+            this.failedIndex = failedIndex;
+            this.transactions = transactions;
+            this.balance = balance;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isSuccessful() {
+            return status == Status.SUCCESS;
+        }
+
+        /**
+         * Get the position of the operation that was rejected, or -1 if the batch was applied.
+         */
+        public int getFailedIndex() {
+            return failedIndex;
+        }
+
+        /**
+         * Get the transactions made, in order; empty if the batch was rejected.
+         */
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * Get the balance the batch left, or the balance it was checked against if it was rejected.
+         */
+        public long getBalance() {
+            return balance;
+        }
+    }
+
+    private final AtomicReference<Entry> head;
+    // Guarded by this: the history and summary cover the entries up to folded
+    private final TransactionLog transactionHistory;
+    private final AccountSnapshot summary;
+    private Entry folded;
 
     /**
      * Constructor to initialize the bank account with an initial balance.
-     * @param initialBalance The initial balance to set for the account
+     * @param initialBalance The initial balance to set for the account, in sen
      */
-    public BankAccount(double initialBalance) {
+    public BankAccount(long initialBalance) {
         if (initialBalance < 0) {
             throw new IllegalArgumentException("Initial balance cannot be negative");
         }
-        this.balance = initialBalance;
-        this.transactionHistory = new ArrayList<>();
+        this.transactionHistory = new TransactionLog();
+        this.summary = new AccountSnapshot();
+        this.summary.setBalance(initialBalance);
+        this.folded = new Entry(initialBalance, 0);
+        this.head = new AtomicReference<>(folded);
+    }
+
+    /**
+     * Constructor to rebuild the account from a snapshot and the transactions after it.
+     * Only those later transactions are kept in the history; everything before them is
+     * summarised by the snapshot.
+     * @param snapshot The latest snapshot of the account
+     * @param tail     The transactions after the snapshot, oldest first
+     */
+    public BankAccount(AccountSnapshot snapshot, List<Transaction> tail) {
+        this.summary = new AccountSnapshot(snapshot);
+        for (Transaction transaction : tail) {
+            summary.apply(transaction);
+        }
+        this.transactionHistory = new TransactionLog();
+        this.transactionHistory.addAll(tail);
+        this.folded = new Entry(summary.getBalance(), tail.size());
+        this.head = new AtomicReference<>(folded);
     }
 
     /**
      * Deposits money into the account.
-     * @param amount The amount to deposit (must be positive)
+     * @param amount The amount to deposit in sen (must be positive)
      * @return true if deposit was successful, false otherwise
+     * @throws ArithmeticException if the balance would overflow
      */
-    public boolean deposit(double amount) {
+    public boolean deposit(long amount) {
         if (amount <= 0) {
             return false; // Invalid deposit amount
         }
-        balance += amount;
-        Transaction transaction = new Transaction("DEPOSIT", amount, balance, "Deposit");
-        addTransaction(transaction);
+        Entry entry = new Entry(TransactionType.DEPOSIT, amount, "Deposit");
+        Entry current;
+        do {
+            current = head.get();
+            entry.link(current, Money.add(current.balance, amount));
+        } while (!head.compareAndSet(current, entry));
         return true;
     }
 
     /**
      * Withdraws money from the account.
-     * @param amount The amount to withdraw (must be positive and not exceed balance)
+     * @param amount The amount to withdraw in sen (must be positive and not exceed balance)
      * @return true if withdrawal was successful, false otherwise
      */
-    public boolean withdraw(double amount) {
+    public boolean withdraw(long amount) {
+        return debit(TransactionType.WITHDRAW, amount, "Withdrawal");
+    }
+
+    private boolean debit(TransactionType type, long amount, String description) {
         if (amount <= 0) {
-            return false; // Invalid withdrawal amount
+            return false; // Invalid amount
         }
-        if (amount > balance) {
-            return false; // Insufficient funds
-        }
-        balance -= amount;
-        Transaction transaction = new Transaction("WITHDRAW", amount, balance, "Withdrawal");
-        addTransaction(transaction);
+        Entry entry = new Entry(type, amount, description);
+        Entry current;
+        do {
+            current = head.get();
+            // Checked against the balance this attempt would replace
+            if (amount > current.balance) {
+                return false; // Insufficient funds
+            }
+            entry.link(current, Money.subtract(current.balance, amount));
+        } while (!head.compareAndSet(current, entry));
         return true;
     }
 
+    /**
+     * Applies operations in order as one change: either all of them are applied, with one
+     * compare-and-set, or none are. Each withdrawal is checked against the balance left by
+     * the operations before it.
+     * {@link com.example.raybank.utils.SessionRepository#applyBatch} applies a batch to the
+     * current user's account and persists it with one commit.
+     * @param operations The operations, in the order to apply them
+     * @return The result; if it is not successful the account is unchanged
+     */
+    public Batch applyBatch(List<Operation> operations) {
+        Entry[] entries = new Entry[operations.size()];
+        for (int i = 0; i < entries.length; i++) {
+            Operation operation = operations.get(i);
+            if (operation.amount <= 0) {
+                return new Batch(Status.INVALID_AMOUNT, i, Collections.<Transaction>emptyList(), getBalance());
+            }
+            entries[i] = new Entry(operation.type, operation.amount, operation.description);
+        }
+        if (entries.length == 0) {
+            return new Batch(Status.SUCCESS, -1, Collections.<Transaction>emptyList(), getBalance());
+        }
+
+        Entry current;
+        do {
+            current = head.get();
+            Entry previous = current;
+            for (int i = 0; i < entries.length; i++) {
+                Entry entry = entries[i];
+                long balance;
+                if (entry.type.isCredit()) {
+                    try {
+                        balance = Money.add(previous.balance, entry.amount);
+                    } catch (ArithmeticException e) {
+                        return new Batch(Status.INVALID_AMOUNT, i, Collections.<Transaction>emptyList(),
+                                current.balance);
+                    }
+                } else {
+                    if (entry.amount > previous.balance) {
+                        return new Batch(Status.INSUFFICIENT_FUNDS, i, Collections.<Transaction>emptyList(),
+                                current.balance);
+                    }
+                    balance = Money.subtract(previous.balance, entry.amount);
+                }
+                entry.link(previous, balance);
+                previous = entry;
+            }
+        } while (!head.compareAndSet(current, entries[entries.length - 1]));
+
+        List<Transaction> transactions = new ArrayList<>(entries.length);
+        for (Entry entry : entries) {
+            transactions.add(entry.toTransaction());
+        }
+        return new Batch(Status.SUCCESS, -1, transactions, entries[entries.length - 1].balance);
+    }
+
     /**
      * Gets the current balance of the account.
-     * @return The current balance
+     * @return The current balance in sen
+     */
+    public long getBalance() {
+        return head.get().balance;
+    }
+
+    /**
+     * Gets the running totals of the account, including transactions before its history.
+     * @return A copy of the account summary
      */
-    public double getBalance() {
-        return balance;
+    public synchronized AccountSnapshot getSummary() {
+        fold();
+        return new AccountSnapshot(summary);
     }
 
     /**
      * Gets the transaction history.
-     * @return List of all transactions
+     * Taking the snapshot is constant time, and it can be iterated while transactions are added.
+     * @return Immutable snapshot of all transactions so far, oldest first
      */
     public List<Transaction> getTransactionHistory() {
-        return new ArrayList<>(transactionHistory);
+        return getTransactionLog();
     }
 
     /**
-     * Adds a transaction to the history.
+     * Gets the transaction history as a log, for reading fields without decoding Transactions.
+     * @return Immutable snapshot of all transactions so far, oldest first
+     */
+    public synchronized TransactionLog getTransactionLog() {
+        fold();
+        return transactionHistory.snapshot();
+    }
+
+    /**
+     * Adds a transaction to the history. The balance is left as it is.
      * @param transaction The transaction to add
      */
     public void addTransaction(Transaction transaction) {
-        transactionHistory.add(transaction);
+        Entry entry = new Entry(transaction);
+        Entry current;
+        do {
+            current = head.get();
+            entry.link(current, current.balance);
+        } while (!head.compareAndSet(current, entry));
+    }
+
+    /**
+     * Append the entries added since the last fold to the history and summary, oldest first.
+     */
+    private void fold() {
+        Entry newest = head.get();
+        int count = newest.sequence - folded.sequence;
+        if (count == 0) {
+            return;
+        }
+        Entry[] entries = new Entry[count];
+        Entry entry = newest;
+        for (int i = count - 1; i >= 0; i--) {
+            entries[i] = entry;
+            entry = entry.previous;
+        }
+        // Writers only look at the newest entry, so the folded ones can be let go
+        entries[0].previous = null;
+
+        for (Entry next : entries) {
+            if (next.transactionId != null) {
+                transactionHistory.append(next.transactionId, next.type, next.amount, next.balanceAfter,
+                        next.timestamp, next.description);
+            } else {
+                transactionHistory.append(next.id, next.type, next.amount, next.balanceAfter,
+                        next.timestamp, next.description);
+            }
+            // The balance the account was left with, which an added transaction does not move
+            summary.apply(next.type, next.amount, next.balance);
+        }
+        folded = newest;
+    }
+
+    /**
+     * The account's balance after one transaction, with that transaction and the entry before it.
+     * An entry is only changed before the compare-and-set that publishes it, except that
+     * the fold, which alone walks the chain, unlinks the entries it has folded.
+     */
+    private static final class Entry {
+        private long balance;
+        private int sequence;
+        private Entry previous;
+
+        // The transaction; id is used unless transactionId is set
+        private final long id;
+        private final String transactionId;
+        private final TransactionType type;
+        private final long amount;
+        private long balanceAfter;
+        private final long timestamp;
+        private final String description;
+
+        /**
+         * Entry with no transaction, for an account's starting state.
+         */
+        Entry(long balance, int sequence) {
+            this.balance = balance;
+            this.sequence = sequence;
+            this.id = 0;
+            this.transactionId = null;
+            this.type = null;
+            this.amount = 0;
+            this.timestamp = 0;
+            this.description = null;
+        }
+
+        Entry(TransactionType type, long amount, String description) {
+            this.id = IdGenerator.getInstance().nextId();
+            this.transactionId = null;
+            this.type = type;
+            this.amount = amount;
+            this.timestamp = System.currentTimeMillis();
+            this.description = description;
+        }
+
+        Entry(Transaction transaction) {
+            this.id = 0;
+            this.transactionId = transaction.getTransactionId();
+            this.type = transaction.getType();
+            this.amount = transaction.getAmount();
+            this.balanceAfter = transaction.getBalanceAfter();
+            this.timestamp = transaction.getTimestamp();
+            this.description = transaction.getDescription();
+        }
+
+        /**
+         * Create the Transaction this entry records.
+         */
+        Transaction toTransaction() {
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId(transactionId != null ? transactionId : "TXN" + id);
+            transaction.setType(type);
+            transaction.setAmount(amount);
+            transaction.setBalanceAfter(balanceAfter);
+            transaction.setTimestamp(timestamp);
+            transaction.setDescription(description);
+            return transaction;
+        }
+
+        /**
+         * Place this entry after another, leaving the given balance.
+         * A transaction made here records that balance; an added one keeps its own.
+         */
+        void link(Entry previous, long balance) {
+            this.previous = previous;
+            this.sequence = previous.sequence + 1;
+            this.balance = balance;
+            if (transactionId == null) {
+                this.balanceAfter = balance;
+            }
+        }
     }
 }
@@ -8,6 +8,7 @@ import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
 import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.SessionRepository;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
@@ -22,6 +23,7 @@ public class LoginActivity extends AppCompatActivity {
     private MaterialButton buttonLogin;
 
     private AuthManager authManager;
+    private SessionRepository session;
     private DataManager dataManager;
 
     @Override
@@ -31,19 +33,24 @@ public class LoginActivity extends AppCompatActivity {
 
         // Initialize managers
         authManager = AuthManager.getInstance();
-        dataManager = new DataManager(this);
+        session = SessionRepository.getInstance(this);
+        dataManager = session.getDataManager();
 
-        // Check if user is already logged in
-        User currentUser = dataManager.getCurrentUser();
-        if (currentUser != null) {
-            navigateToMain();
-            return;
-        }
+        // Check if user is already logged in, reading the session on the I/O thread if needed
+        session.loadCurrentUser(currentUser -> {
+            if (isFinishing()) {
+                return;
+            }
+            if (currentUser != null) {
+                navigateToMain();
+                return;
+            }
 
-        // Initialize views
-        initializeViews();
-        setupListeners();
-        setupBackPressHandler();
+            // Initialize views
+            initializeViews();
+            setupListeners();
+            setupBackPressHandler();
+        });
     }
 
     /**
@@ -93,16 +100,19 @@ public class LoginActivity extends AppCompatActivity {
 
         if (user != null) {
             // Authentication successful
-            // Save user to DataManager for session persistence
-            dataManager.setCurrentUser(user);
-            dataManager.saveUser(user);
-
-            // Show success message
-            String welcomeMessage = getString(R.string.welcome_to_mybank) + ", " + user.getFullName();
-            Toast.makeText(this, welcomeMessage, Toast.LENGTH_SHORT).show();
-
-            // Navigate to main activity
-            navigateToMain();
+            // Save user to DataManager for session persistence.
+            // Reuse the stored copy so the demo data does not overwrite earlier activity.
+            dataManager.getUserByEmailAsync(user.getEmail(), storedUser -> {
+                User sessionUser = storedUser != null ? storedUser : user;
+                session.login(sessionUser, null);
+
+                // Show success message
+                String welcomeMessage = getString(R.string.welcome_to_mybank) + ", " + sessionUser.getFullName();
+                Toast.makeText(this, welcomeMessage, Toast.LENGTH_SHORT).show();
+
+                // Navigate to main activity
+                navigateToMain();
+            });
         } else {
             // Authentication failed
             Toast.makeText(this, R.string.error_invalid_credentials, Toast.LENGTH_LONG).show();
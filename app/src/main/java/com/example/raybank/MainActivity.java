@@ -16,14 +16,16 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
-import com.example.raybank.model.Transaction;
+import androidx.lifecycle.Lifecycle;
 import com.example.raybank.model.User;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.CurrencyFormatter;
+import com.example.raybank.utils.IdGenerator;
+import com.example.raybank.utils.Money;
+import com.example.raybank.utils.SessionRepository;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
-import java.util.Locale;
-import java.text.NumberFormat;
+import java.util.Collections;
 
 /**
  * MainActivity - Modern Dashboard for RayBank banking application.
@@ -33,7 +35,7 @@ import java.text.NumberFormat;
 public class MainActivity extends AppCompatActivity {
     private BankAccount bankAccount;
     private User currentUser;
-    private DataManager dataManager;
+    private SessionRepository session;
 
     // UI Components
     private TextView textViewWelcome;
@@ -49,44 +51,49 @@ public class MainActivity extends AppCompatActivity {
     private BottomNavigationView bottomNavigationView;
 
     private boolean isAccountInitialized = false;
-    private NumberFormat currencyFormat;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize DataManager and get current user
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
-
-        // If no user is logged in, redirect to login
-        if (currentUser == null) {
-            Intent intent = new Intent(this, LoginActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-            return;
-        }
+        // Get current user from the session, read on the I/O thread if it is not in memory yet
+        session = SessionRepository.getInstance(this);
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
 
-        // Initialize currency formatter for Malaysian Ringgit
-        currencyFormat = NumberFormat.getCurrencyInstance(new Locale("ms", "MY"));
-
-        initializeViews();
-        setupAccount();
-        setupClickListeners();
-        setupBottomNavigation();
-        updateUI();
-
-        // Check if coming from QR scanner with account number
-        Intent intent = getIntent();
-        if (intent != null && intent.getBooleanExtra("FROM_QR_SCAN", false)) {
-            String transferAccount = intent.getStringExtra("TRANSFER_ACCOUNT");
-            if (transferAccount != null && !transferAccount.isEmpty()) {
-                // Auto-open transfer dialog with pre-filled account
-                showTransferDialogWithAccount(transferAccount);
+            // If no user is logged in, redirect to login
+            if (user == null) {
+                Intent intent = new Intent(this, LoginActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+                return;
             }
-        }
+
+            currentUser = user;
+            initializeViews();
+            setupClickListeners();
+            setupBottomNavigation();
+            updateUI();
+            // The account is loaded by setupAccount() in onResume(), unless that ran while
+            // the user was still being read
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                setupAccount();
+            }
+
+            // Check if coming from QR scanner with account number
+            Intent intent = getIntent();
+            if (intent != null && intent.getBooleanExtra("FROM_QR_SCAN", false)) {
+                String transferAccount = intent.getStringExtra("TRANSFER_ACCOUNT");
+                if (transferAccount != null && !transferAccount.isEmpty()) {
+                    // Auto-open transfer dialog with pre-filled account
+                    showTransferDialogWithAccount(transferAccount);
+                }
+            }
+        });
     }
 
     /**
@@ -107,12 +114,20 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Setup bank account from user data.
+     * Setup bank account by replaying the transactions after the latest snapshot.
+     * Transactions are refused until the account has been loaded.
      */
     private void setupAccount() {
-        // Initialize bank account with user's current balance
-        bankAccount = new BankAccount(currentUser.getBalance());
-        isAccountInitialized = true;
+        isAccountInitialized = false;
+        session.loadAccount(account -> {
+            if (isFinishing() || account == null) {
+                return;
+            }
+            // The session has already corrected a stored balance that drifted from the fold
+            bankAccount = account;
+            isAccountInitialized = true;
+            updateBalanceDisplay();
+        });
     }
 
     /**
@@ -193,6 +208,8 @@ public class MainActivity extends AppCompatActivity {
                                                                                                                // exists
                                                                                                                // in XML
         MaterialButton buttonConfirm = dialogView.findViewById(R.id.buttonConfirmDeposit);
+        // One key per dialog, so a double tap on confirm deposits once
+        String requestKey = IdGenerator.getInstance().nextRequestKey();
         MaterialButton buttonCancel = dialogView.findViewById(R.id.buttonCancelDeposit);
 
         // Setup ChipGroup listener
@@ -213,7 +230,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 String amountStr = editTextAmount.getText().toString().trim();
-                if (performDeposit(amountStr)) {
+                if (performDeposit(requestKey, amountStr)) {
                     dialog.dismiss();
                 }
             }
@@ -250,6 +267,8 @@ public class MainActivity extends AppCompatActivity {
                                                                                                                 // ID in
                                                                                                                 // XML
         MaterialButton buttonConfirm = dialogView.findViewById(R.id.buttonConfirmWithdraw);
+        // One key per dialog, so a double tap on confirm withdraws once
+        String requestKey = IdGenerator.getInstance().nextRequestKey();
         MaterialButton buttonCancel = dialogView.findViewById(R.id.buttonCancelWithdraw);
 
         // Setup ChipGroup listener
@@ -270,7 +289,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 String amountStr = editTextAmount.getText().toString().trim();
-                if (performWithdrawal(amountStr)) {
+                if (performWithdrawal(requestKey, amountStr)) {
                     dialog.dismiss();
                 }
             }
@@ -304,6 +323,8 @@ public class MainActivity extends AppCompatActivity {
         TextInputEditText editTextAmount = dialogView.findViewById(R.id.editTextTransferAmount);
         com.google.android.material.chip.ChipGroup chipGroup = dialogView.findViewById(R.id.chipGroupTransfer);
         MaterialButton buttonConfirm = dialogView.findViewById(R.id.buttonConfirmTransfer);
+        // One key per dialog, so a double tap on confirm transfers once
+        String requestKey = IdGenerator.getInstance().nextRequestKey();
         MaterialButton buttonCancel = dialogView.findViewById(R.id.buttonCancelTransfer);
 
         // Setup ChipGroup listener
@@ -325,7 +346,7 @@ public class MainActivity extends AppCompatActivity {
             public void onClick(View v) {
                 String recipientAccount = editTextRecipient.getText().toString().trim();
                 String amountStr = editTextAmount.getText().toString().trim();
-                if (performTransfer(recipientAccount, amountStr)) {
+                if (performTransfer(requestKey, recipientAccount, amountStr)) {
                     dialog.dismiss();
                 }
             }
@@ -359,6 +380,8 @@ public class MainActivity extends AppCompatActivity {
         TextInputEditText editTextAmount = dialogView.findViewById(R.id.editTextTransferAmount);
         com.google.android.material.chip.ChipGroup chipGroup = dialogView.findViewById(R.id.chipGroupTransfer);
         MaterialButton buttonConfirm = dialogView.findViewById(R.id.buttonConfirmTransfer);
+        // One key per dialog, so a double tap on confirm transfers once
+        String requestKey = IdGenerator.getInstance().nextRequestKey();
         MaterialButton buttonCancel = dialogView.findViewById(R.id.buttonCancelTransfer);
 
         // Pre-fill account number from QR scan
@@ -383,7 +406,7 @@ public class MainActivity extends AppCompatActivity {
             public void onClick(View v) {
                 String recipientAccount = editTextRecipient.getText().toString().trim();
                 String amountStr = editTextAmount.getText().toString().trim();
-                if (performTransfer(recipientAccount, amountStr)) {
+                if (performTransfer(requestKey, recipientAccount, amountStr)) {
                     dialog.dismiss();
                 }
             }
@@ -450,49 +473,48 @@ public class MainActivity extends AppCompatActivity {
      * balance,
      * creates a transaction record, saves data, and refreshes the UI.
      * 
-     * @param amountStr The deposit amount as a string
+     * A repeat of a request that already succeeded is ignored.
+     * 
+     * @param requestKey Idempotency key of the request
+     * @param amountStr  The deposit amount as a string
      * @return true if successful, false otherwise
      */
-    private boolean performDeposit(String amountStr) {
+    private boolean performDeposit(String requestKey, String amountStr) {
         if (!isAccountInitialized) {
             showError(getString(R.string.error_account_not_initialized));
             return false;
         }
 
+        if (session.findCompleted(requestKey) != null) {
+            return true;
+        }
+
         if (TextUtils.isEmpty(amountStr)) {
             showError(getString(R.string.error_amount_empty));
             return false;
         }
 
         try {
-            double amount = Double.parseDouble(amountStr);
+            long amount = Money.parse(amountStr);
 
             if (amount <= 0) {
                 showError(getString(R.string.error_negative_amount));
                 return false;
             }
 
-            if (bankAccount.deposit(amount)) {
-                double newBalance = bankAccount.getBalance();
-                currentUser.setBalance(newBalance);
-
-                // Create transaction record
-                Transaction transaction = new Transaction(
-                        "DEPOSIT",
-                        amount,
-                        newBalance,
-                        getString(R.string.transaction_deposit));
-                currentUser.addTransaction(transaction);
-
-                // Save user data
-                dataManager.saveUser(currentUser);
-                dataManager.setCurrentUser(currentUser);
-
-                // Update UI
+            BankAccount.Batch result = session.applyBatch(requestKey, bankAccount, Collections.singletonList(
+                    BankAccount.Operation.deposit(amount, getString(R.string.transaction_deposit))));
+            if (result == null) {
+                showError(getString(R.string.error_account_not_initialized));
+                return false;
+            }
+            if (result.isSuccessful()) {
+                // The session has saved the new balance and transaction in the background
                 updateBalanceDisplay();
                 showSuccess(getString(R.string.deposit_success) + " " + formatCurrency(amount));
                 return true;
             } else {
+                // The balance would overflow
                 showError(getString(R.string.error_invalid_deposit));
                 return false;
             }
@@ -509,53 +531,51 @@ public class MainActivity extends AppCompatActivity {
      * updates User balance, creates a transaction record, saves data, and refreshes
      * the UI.
      * 
-     * @param amountStr The withdrawal amount as a string
+     * A repeat of a request that already succeeded is ignored.
+     * 
+     * @param requestKey Idempotency key of the request
+     * @param amountStr  The withdrawal amount as a string
      * @return true if successful, false otherwise
      */
-    private boolean performWithdrawal(String amountStr) {
+    private boolean performWithdrawal(String requestKey, String amountStr) {
         if (!isAccountInitialized) {
             showError(getString(R.string.error_account_not_initialized));
             return false;
         }
 
+        if (session.findCompleted(requestKey) != null) {
+            return true;
+        }
+
         if (TextUtils.isEmpty(amountStr)) {
             showError(getString(R.string.error_amount_empty));
             return false;
         }
 
         try {
-            double amount = Double.parseDouble(amountStr);
+            long amount = Money.parse(amountStr);
 
             if (amount <= 0) {
                 showError(getString(R.string.error_negative_amount));
                 return false;
             }
 
-            if (bankAccount.withdraw(amount)) {
-                double newBalance = bankAccount.getBalance();
-                currentUser.setBalance(newBalance);
-
-                // Create transaction record
-                Transaction transaction = new Transaction(
-                        "WITHDRAW",
-                        amount,
-                        newBalance,
-                        getString(R.string.transaction_withdraw));
-                currentUser.addTransaction(transaction);
-
-                // Save user data
-                dataManager.saveUser(currentUser);
-                dataManager.setCurrentUser(currentUser);
-
-                // Update UI
+            BankAccount.Batch result = session.applyBatch(requestKey, bankAccount, Collections.singletonList(
+                    BankAccount.Operation.withdraw(amount, getString(R.string.transaction_withdraw))));
+            if (result == null) {
+                showError(getString(R.string.error_account_not_initialized));
+                return false;
+            }
+            if (result.isSuccessful()) {
+                // The session has saved the new balance and transaction in the background
                 updateBalanceDisplay();
                 showSuccess(getString(R.string.withdraw_success) + " " + formatCurrency(amount));
                 return true;
             } else {
-                if (amount > bankAccount.getBalance()) {
+                if (result.getStatus() == BankAccount.Status.INSUFFICIENT_FUNDS) {
                     String errorMsg = getString(R.string.error_insufficient_funds) + "\n" +
                             getString(R.string.current_balance) + ": " +
-                            formatCurrency(bankAccount.getBalance());
+                            formatCurrency(result.getBalance());
                     showError(errorMsg);
                 } else {
                     showError(getString(R.string.error_invalid_withdraw));
@@ -570,15 +590,18 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Perform transfer transaction.
-     * Validates recipient account and amount, ensures sufficient funds,
-     * simulates the transfer by withdrawing from the current user,
-     * creates a transaction record, saves data, and refreshes the UI.
+     * Validates recipient account and amount and ensures sufficient funds, then hands the
+     * transfer to the session's ledger engine, which debits the current user and credits
+     * the recipient together. The result is shown once the recipient has been resolved.
+     * 
+     * A repeat of a request that already succeeded is ignored.
      * 
+     * @param requestKey       Idempotency key of the request
      * @param recipientAccount The account number of the recipient
      * @param amountStr        The transfer amount as a string
-     * @return true if successful, false otherwise
+     * @return true if the transfer was submitted, false otherwise
      */
-    private boolean performTransfer(String recipientAccount, String amountStr) {
+    private boolean performTransfer(String requestKey, String recipientAccount, String amountStr) {
         if (!isAccountInitialized) {
             showError(getString(R.string.error_account_not_initialized));
             return false;
@@ -600,50 +623,67 @@ public class MainActivity extends AppCompatActivity {
         }
 
         try {
-            double amount = Double.parseDouble(amountStr);
+            long amount = Money.parse(amountStr);
 
             if (amount <= 0) {
                 showError(getString(R.string.error_negative_amount));
                 return false;
             }
 
-            if (bankAccount.withdraw(amount)) {
-                double newBalance = bankAccount.getBalance();
-                currentUser.setBalance(newBalance);
-
-                // Create transaction record
-                Transaction transaction = new Transaction(
-                        "TRANSFER",
-                        amount,
-                        newBalance,
-                        getString(R.string.transaction_transfer_sent) + " to " + recipientAccount);
-                currentUser.addTransaction(transaction);
-
-                // Save user data
-                dataManager.saveUser(currentUser);
-                dataManager.setCurrentUser(currentUser);
-
-                // Update UI
-                updateBalanceDisplay();
-                showSuccess(getString(R.string.transfer_success) + " " + formatCurrency(amount));
-                return true;
-            } else {
-                if (amount > bankAccount.getBalance()) {
-                    String errorMsg = getString(R.string.error_insufficient_funds) + "\n" +
-                            getString(R.string.current_balance) + ": " +
-                            formatCurrency(bankAccount.getBalance());
-                    showError(errorMsg);
-                } else {
-                    showError(getString(R.string.error_invalid_account));
-                }
+            if (amount > bankAccount.getBalance()) {
+                showInsufficientFunds();
                 return false;
             }
+
+            String sentNote = getString(R.string.transaction_transfer_sent) + " to " + recipientAccount;
+            String receivedNote = getString(R.string.transaction_transfer_received) + " from "
+                    + currentUser.getAccountNumber();
+            session.transfer(requestKey, recipientAccount, amount, sentNote, receivedNote, result -> {
+                if (result == null) {
+                    showError(getString(R.string.error_account_not_initialized));
+                    return;
+                }
+                if (result.isDuplicate()) {
+                    // Already applied and shown for the first request
+                    return;
+                }
+                switch (result.getStatus()) {
+                    case SUCCESS:
+                        // The engine moved the user's balance, so the account is rebuilt
+                        // from the session rather than debited a second time here
+                        if (!isFinishing()) {
+                            setupAccount();
+                        }
+                        showSuccess(getString(R.string.transfer_success) + " " + formatCurrency(amount));
+                        break;
+                    case INSUFFICIENT_FUNDS:
+                        showInsufficientFunds();
+                        break;
+                    case SAME_ACCOUNT:
+                        showError(getString(R.string.error_same_account));
+                        break;
+                    case INVALID_AMOUNT:
+                        showError(getString(R.string.error_invalid_number));
+                        break;
+                    case UNKNOWN_RECIPIENT:
+                        showError(getString(R.string.error_invalid_account));
+                        break;
+                }
+            });
+            return true;
         } catch (NumberFormatException e) {
             showError(getString(R.string.error_invalid_number));
             return false;
         }
     }
 
+    private void showInsufficientFunds() {
+        String errorMsg = getString(R.string.error_insufficient_funds) + "\n" +
+                getString(R.string.current_balance) + ": " +
+                formatCurrency(bankAccount.getBalance());
+        showError(errorMsg);
+    }
+
     /**
      * Update balance display with current balance.
      */
@@ -668,8 +708,8 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Format currency in Malaysian Ringgit (RM).
      */
-    private String formatCurrency(double amount) {
-        return currencyFormat.format(amount);
+    private String formatCurrency(long sen) {
+        return CurrencyFormatter.formatRM(sen);
     }
 
     /**
@@ -689,12 +729,14 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh user data when returning to activity
-        currentUser = dataManager.getCurrentUser();
+        // Refresh user data when returning to activity; before onCreate() has the user
+        // there is nothing to refresh
         if (currentUser != null) {
-            bankAccount = new BankAccount(currentUser.getBalance());
-            isAccountInitialized = true;
-            updateUI();
+            currentUser = session.getCurrentUser();
+            if (currentUser != null) {
+                setupAccount();
+                updateUI();
+            }
         }
 
         // Ensure home is selected in bottom nav
@@ -6,7 +6,7 @@ import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.SessionRepository;
 
 /**
  * Onboarding activity with multiple screens introducing the app.
@@ -80,8 +80,7 @@ public class OnboardingActivity extends AppCompatActivity {
      * Mark onboarding as complete and navigate to the Sign In screen.
      */
     private void completeOnboarding() {
-        DataManager dataManager = new DataManager(this);
-        dataManager.setOnboardingComplete(true);
+        SessionRepository.getInstance(this).getDataManager().setOnboardingComplete(true);
 
         Intent intent = new Intent(OnboardingActivity.this, SignInActivity.class);
         startActivity(intent);
@@ -10,19 +10,18 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.CurrencyFormatter;
+import com.example.raybank.utils.SessionRepository;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 /**
  * ProfileSettingsActivity for viewing and editing user profile information.
  * Includes bottom navigation and logout functionality.
  */
 public class ProfileSettingsActivity extends AppCompatActivity {
-    private DataManager dataManager;
+    private SessionRepository session;
     private User currentUser;
 
     private TextView textViewProfileName;
@@ -35,31 +34,33 @@ public class ProfileSettingsActivity extends AppCompatActivity {
     private MaterialButton buttonLogout;
     private BottomNavigationView bottomNavigationView;
 
-    private NumberFormat currencyFormat;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_profile_settings);
 
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
-
-        if (currentUser == null) {
-            Intent intent = new Intent(this, LoginActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-            return;
-        }
+        session = SessionRepository.getInstance(this);
+        // Read on the I/O thread if the user is not in memory yet
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
 
-        // Initialize currency formatter for Malaysian Ringgit
-        currencyFormat = NumberFormat.getCurrencyInstance(new Locale("ms", "MY"));
+            if (user == null) {
+                Intent intent = new Intent(this, LoginActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+                return;
+            }
 
-        initializeViews();
-        loadUserData();
-        setupClickListeners();
-        setupBottomNavigation();
+            currentUser = user;
+            initializeViews();
+            loadUserData();
+            setupClickListeners();
+            setupBottomNavigation();
+        });
     }
 
     /**
@@ -92,7 +93,7 @@ public class ProfileSettingsActivity extends AppCompatActivity {
     private void loadUserData() {
         textViewProfileName.setText(currentUser.getFullName());
         textViewAccountNumber.setText(getString(R.string.account_number) + ": " + currentUser.getAccountNumber());
-        textViewBalance.setText(currencyFormat.format(currentUser.getBalance()));
+        textViewBalance.setText(CurrencyFormatter.formatRM(currentUser.getBalance()));
 
         editTextFullName.setText(currentUser.getFullName());
         editTextEmail.setText(currentUser.getEmail());
@@ -178,13 +179,17 @@ public class ProfileSettingsActivity extends AppCompatActivity {
         currentUser.setFullName(fullName);
         currentUser.setPhoneNumber(phone);
 
-        if (dataManager.saveUser(currentUser)) {
-            dataManager.setCurrentUser(currentUser);
-            Toast.makeText(this, getString(R.string.profile_updated), Toast.LENGTH_SHORT).show();
-            loadUserData(); // Refresh display
-        } else {
-            Toast.makeText(this, getString(R.string.error_save_failed), Toast.LENGTH_SHORT).show();
-        }
+        session.markDirty(saved -> {
+            if (isFinishing()) {
+                return;
+            }
+            if (saved) {
+                Toast.makeText(this, getString(R.string.profile_updated), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, getString(R.string.error_save_failed), Toast.LENGTH_SHORT).show();
+            }
+        });
+        loadUserData(); // Refresh display
     }
 
     /**
@@ -217,7 +222,7 @@ public class ProfileSettingsActivity extends AppCompatActivity {
      */
     private void performLogout() {
         // Clear current user session
-        dataManager.clearCurrentUser();
+        session.logout();
 
         // Navigate to login screen
         Intent intent = new Intent(this, LoginActivity.class);
@@ -231,10 +236,12 @@ public class ProfileSettingsActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh user data when returning to activity
-        currentUser = dataManager.getCurrentUser();
+        // Refresh user data when returning to activity; before onCreate() has the user there is nothing to refresh
         if (currentUser != null) {
-            loadUserData();
+            currentUser = session.getCurrentUser();
+            if (currentUser != null) {
+                loadUserData();
+            }
         }
 
         // Ensure profile is selected in bottom nav
@@ -9,10 +9,12 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.IdGenerator;
+import com.example.raybank.utils.SessionRepository;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
+import java.util.Locale;
 
 /**
  * QRScannerActivity - Scan QR codes or manually enter account numbers for
@@ -22,7 +24,7 @@ public class QRScannerActivity extends AppCompatActivity {
     private TextInputEditText editTextAccountNumber;
     private MaterialButton buttonProceed;
     private BottomNavigationView bottomNavigationView;
-    private DataManager dataManager;
+    private SessionRepository session;
     private User currentUser;
 
     @Override
@@ -30,20 +32,26 @@ public class QRScannerActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_qr_scanner);
 
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
+        session = SessionRepository.getInstance(this);
+        // Read on the I/O thread if the user is not in memory yet
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
 
-        if (currentUser == null) {
-            Intent intent = new Intent(this, LoginActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-            return;
-        }
+            if (user == null) {
+                Intent intent = new Intent(this, LoginActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+                return;
+            }
 
-        initializeViews();
-        setupClickListeners();
-        setupBottomNavigation();
+            currentUser = user;
+            initializeViews();
+            setupClickListeners();
+            setupBottomNavigation();
+        });
     }
 
     /**
@@ -72,15 +80,16 @@ public class QRScannerActivity extends AppCompatActivity {
      * Redirects to MainActivity with pre-filled account details.
      */
     private void proceedToTransfer() {
-        String accountNumber = editTextAccountNumber.getText().toString().trim();
+        String accountNumber = editTextAccountNumber.getText().toString().trim().toUpperCase(Locale.ROOT);
 
         if (TextUtils.isEmpty(accountNumber)) {
             Toast.makeText(this, "Please enter an account number", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        if (accountNumber.length() != 10) {
-            Toast.makeText(this, "Account number must be 10 digits", Toast.LENGTH_SHORT).show();
+        // Accounts opened before check digits keep their numbers, so those formats still pass
+        if (!IdGenerator.isValidAccountNumber(accountNumber) && !IdGenerator.isLegacyAccountNumber(accountNumber)) {
+            Toast.makeText(this, getString(R.string.error_account_number_format), Toast.LENGTH_SHORT).show();
             return;
         }
 
@@ -11,6 +11,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
 import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.SessionRepository;
 
 /**
  * Sign in activity for user authentication.
@@ -27,7 +28,7 @@ public class SignInActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_sign_in);
 
-        dataManager = new DataManager(this);
+        dataManager = SessionRepository.getInstance(this).getDataManager();
 
         editTextEmail = findViewById(R.id.editTextEmail);
         editTextPassword = findViewById(R.id.editTextPassword);
@@ -74,17 +75,18 @@ public class SignInActivity extends AppCompatActivity {
             return;
         }
 
-        // Authenticate user
-        User user = dataManager.authenticateUser(email, password);
-        if (user != null) {
-            dataManager.setCurrentUser(user);
-            Intent intent = new Intent(SignInActivity.this, MainActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-        } else {
-            showError(getString(R.string.error_invalid_credentials));
-        }
+        // Authenticate user in the background
+        dataManager.authenticateUserAsync(email, password, user -> {
+            if (user != null) {
+                SessionRepository.getInstance(this).login(user, null);
+                Intent intent = new Intent(SignInActivity.this, MainActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+            } else {
+                showError(getString(R.string.error_invalid_credentials));
+            }
+        });
     }
 
     /**
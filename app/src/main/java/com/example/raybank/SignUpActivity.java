@@ -11,6 +11,9 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.model.User;
 import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.IdGenerator;
+import com.example.raybank.utils.Money;
+import com.example.raybank.utils.SessionRepository;
 
 /**
  * Sign up activity for new user registration.
@@ -31,7 +34,7 @@ public class SignUpActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_sign_up);
 
-        dataManager = new DataManager(this);
+        dataManager = SessionRepository.getInstance(this).getDataManager();
 
         editTextFullName = findViewById(R.id.editTextFullName);
         editTextEmail = findViewById(R.id.editTextEmail);
@@ -93,14 +96,14 @@ public class SignUpActivity extends AppCompatActivity {
             return;
         }
 
-        double initialBalance = 0.0;
+        long initialBalance = 0;
         if (TextUtils.isEmpty(initialBalanceStr)) {
             showError(getString(R.string.error_empty_initial_balance));
             return;
         }
 
         try {
-            initialBalance = Double.parseDouble(initialBalanceStr);
+            initialBalance = Money.parse(initialBalanceStr);
             if (initialBalance < 0) {
                 showError(getString(R.string.error_negative_initial_balance));
                 return;
@@ -125,27 +128,29 @@ public class SignUpActivity extends AppCompatActivity {
             return;
         }
 
-        // Check if user already exists
-        if (dataManager.getUserByEmail(email) != null) {
-            showError(getString(R.string.error_email_exists));
-            return;
-        }
-
         // Create new user
-        String userId = "USER" + System.currentTimeMillis();
+        String userId = IdGenerator.getInstance().nextUserId();
         User newUser = new User(userId, email, password, fullName, phone);
         newUser.setBalance(initialBalance);
 
-        if (dataManager.saveUser(newUser)) {
-            dataManager.setCurrentUser(newUser);
-            Toast.makeText(this, getString(R.string.account_created_success), Toast.LENGTH_SHORT).show();
-            Intent intent = new Intent(SignUpActivity.this, MainActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-        } else {
-            showError(getString(R.string.error_signup_failed));
-        }
+        // Check if user already exists, then save in the background
+        dataManager.getUserByEmailAsync(email, existing -> {
+            if (existing != null) {
+                showError(getString(R.string.error_email_exists));
+                return;
+            }
+            SessionRepository.getInstance(this).login(newUser, success -> {
+                if (success) {
+                    Toast.makeText(this, getString(R.string.account_created_success), Toast.LENGTH_SHORT).show();
+                    Intent intent = new Intent(SignUpActivity.this, MainActivity.class);
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                    startActivity(intent);
+                    finish();
+                } else {
+                    showError(getString(R.string.error_signup_failed));
+                }
+            });
+        });
     }
 
     /**
@@ -6,6 +6,7 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.SessionRepository;
 
 /**
  * Splash screen activity that shows on app launch.
@@ -18,28 +19,35 @@ public class SplashActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
 
-        DataManager dataManager = new DataManager(this);
+        SessionRepository session = SessionRepository.getInstance(this);
+        DataManager dataManager = session.getDataManager();
 
         new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
             @Override
             public void run() {
-                Intent intent;
-
                 // Check if onboarding is complete
                 if (!dataManager.isOnboardingComplete()) {
                     // Go to onboarding
-                    intent = new Intent(SplashActivity.this, OnboardingActivity.class);
-                } else if (dataManager.getCurrentUser() != null) {
-                    // User is logged in, go to main activity
-                    intent = new Intent(SplashActivity.this, MainActivity.class);
-                } else {
-                    // Go to sign in
-                    intent = new Intent(SplashActivity.this, SignInActivity.class);
+                    navigateTo(OnboardingActivity.class);
+                    return;
                 }
 
-                startActivity(intent);
-                finish();
+                // Read the logged-in user off the main thread
+                session.loadCurrentUser(user -> {
+                    if (user != null) {
+                        // User is logged in, go to main activity
+                        navigateTo(MainActivity.class);
+                    } else {
+                        // Go to sign in
+                        navigateTo(SignInActivity.class);
+                    }
+                });
             }
         }, SPLASH_DURATION);
     }
+
+    private void navigateTo(Class<?> activityClass) {
+        startActivity(new Intent(SplashActivity.this, activityClass));
+        finish();
+    }
 }
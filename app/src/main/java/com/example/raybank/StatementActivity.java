@@ -9,58 +9,66 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
 import com.example.raybank.model.User;
-import com.example.raybank.utils.DataManager;
+import com.example.raybank.utils.CurrencyFormatter;
+import com.example.raybank.utils.DateFormatter;
+import com.example.raybank.utils.SessionRepository;
+import com.example.raybank.utils.TransactionLog;
+import com.example.raybank.utils.TransactionPager;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
-import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Locale;
+import java.util.Calendar;
 
 /**
  * StatementActivity displays transaction history for the current user.
  * Shows all deposits and withdrawals with dates and amounts in RM.
  */
 public class StatementActivity extends AppCompatActivity {
+    // Rows from the end of the list at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 10;
 
     private RecyclerView recyclerViewTransactions;
     private LinearLayout emptyStateLayout;
     private TextView textViewAccountInfo;
     private BottomNavigationView bottomNavigationView;
 
-    private DataManager dataManager;
+    private SessionRepository session;
     private User currentUser;
     private TransactionAdapter adapter;
-    private NumberFormat currencyFormat;
+    private TransactionPager pager;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_statement);
 
-        // Initialize DataManager and get current user
-        dataManager = new DataManager(this);
-        currentUser = dataManager.getCurrentUser();
-
-        // If no user is logged in, redirect to login
-        if (currentUser == null) {
-            Intent intent = new Intent(this, LoginActivity.class);
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(intent);
-            finish();
-            return;
-        }
+        // Get current user from the session, read on the I/O thread if it is not in memory yet
+        session = SessionRepository.getInstance(this);
+        session.loadCurrentUser(user -> {
+            if (isFinishing()) {
+                return;
+            }
 
-        // Initialize currency formatter for Malaysian Ringgit
-        currencyFormat = NumberFormat.getCurrencyInstance(new Locale("ms", "MY"));
+            // If no user is logged in, redirect to login
+            if (user == null) {
+                Intent intent = new Intent(this, LoginActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+                return;
+            }
 
-        initializeViews();
-        setupBottomNavigation();
-        loadTransactions();
+            currentUser = user;
+            initializeViews();
+            setupBottomNavigation();
+            // Transactions are loaded in onResume(), unless that ran while the user was still being read
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                loadTransactions();
+            }
+        });
     }
 
     /**
@@ -78,8 +86,18 @@ public class StatementActivity extends AppCompatActivity {
         // Set account info
         textViewAccountInfo.setText("Account: " + currentUser.getAccountNumber());
 
-        // Setup RecyclerView
-        recyclerViewTransactions.setLayoutManager(new LinearLayoutManager(this));
+        // Setup RecyclerView, loading older pages as the end comes into view
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerViewTransactions.setLayoutManager(layoutManager);
+        recyclerViewTransactions.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (pager != null && layoutManager.findLastVisibleItemPosition()
+                        >= pager.getTransactions().size() - PREFETCH_DISTANCE) {
+                    loadMoreTransactions();
+                }
+            }
+        });
     }
 
     /**
@@ -124,25 +142,58 @@ public class StatementActivity extends AppCompatActivity {
 
     /**
      * Load and display transactions.
+     * Reads the newest page in the background; older pages are read as the user scrolls.
      */
+    private void loadTransactions() {
+        TransactionPager newPager = new TransactionPager(session);
+        pager = newPager;
+        newPager.loadNextPage(added -> {
+            // Skip pages of a pager replaced by a later reload
+            if (!isFinishing() && newPager == pager) {
+                showTransactions(newPager.getTransactions());
+            }
+        });
+        loadOpeningBalance();
+    }
+
     /**
-     * Load and display transactions.
-     * Fetches transactions from the current user object and populates the
-     * RecyclerView.
+     * Add the balance at the start of this month to the account header.
      */
-    private void loadTransactions() {
-        List<Transaction> transactions = currentUser.getTransactions();
+    private void loadOpeningBalance() {
+        Calendar monthStart = Calendar.getInstance();
+        monthStart.set(Calendar.DAY_OF_MONTH, 1);
+        monthStart.set(Calendar.HOUR_OF_DAY, 0);
+        monthStart.set(Calendar.MINUTE, 0);
+        monthStart.set(Calendar.SECOND, 0);
+        monthStart.set(Calendar.MILLISECOND, 0);
+        session.loadBalanceAt(monthStart.getTimeInMillis() - 1, balance -> {
+            if (!isFinishing() && balance != null) {
+                textViewAccountInfo.setText("Account: " + currentUser.getAccountNumber() + "\n"
+                        + getString(R.string.opening_balance_this_month, CurrencyFormatter.formatRM(balance)));
+            }
+        });
+    }
+
+    /**
+     * Load the next older page and append it to the list.
+     */
+    private void loadMoreTransactions() {
+        TransactionPager currentPager = pager;
+        int start = currentPager.getTransactions().size();
+        currentPager.loadNextPage(added -> {
+            if (!isFinishing() && currentPager == pager && adapter != null && added > 0) {
+                adapter.notifyItemRangeInserted(start, added);
+            }
+        });
+    }
 
-        if (transactions == null || transactions.isEmpty()) {
+    private void showTransactions(TransactionLog transactions) {
+        if (transactions.isEmpty()) {
             // Show empty state
             recyclerViewTransactions.setVisibility(View.GONE);
             emptyStateLayout.setVisibility(View.VISIBLE);
         } else {
-            // Show transactions (reverse order - newest first)
-            List<Transaction> reversedTransactions = new ArrayList<>(transactions);
-            Collections.reverse(reversedTransactions);
-
-            adapter = new TransactionAdapter(reversedTransactions, currencyFormat);
+            adapter = new TransactionAdapter(transactions);
             recyclerViewTransactions.setAdapter(adapter);
 
             recyclerViewTransactions.setVisibility(View.VISIBLE);
@@ -153,10 +204,12 @@ public class StatementActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh data when returning to activity
-        currentUser = dataManager.getCurrentUser();
+        // Refresh data when returning to activity; before onCreate() has the user there is nothing to refresh
         if (currentUser != null) {
-            loadTransactions();
+            currentUser = session.getCurrentUser();
+            if (currentUser != null) {
+                loadTransactions();
+            }
         }
 
         // Ensure statement is selected in bottom nav
@@ -170,12 +223,10 @@ public class StatementActivity extends AppCompatActivity {
      */
     private static class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.TransactionViewHolder> {
 
-        private List<Transaction> transactions;
-        private NumberFormat currencyFormat;
+        private TransactionLog transactions;
 
-        public TransactionAdapter(List<Transaction> transactions, NumberFormat currencyFormat) {
+        public TransactionAdapter(TransactionLog transactions) {
             this.transactions = transactions;
-            this.currencyFormat = currencyFormat;
         }
 
         @NonNull
@@ -188,27 +239,33 @@ public class StatementActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(@NonNull TransactionViewHolder holder, int position) {
-            Transaction transaction = transactions.get(position);
-
-            // Set transaction type
-            String type = transaction.getType();
-            if (type.equals("DEPOSIT")) {
-                holder.textViewType.setText("Deposit / Masuk");
-                holder.textViewAmount
-                        .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.success_green));
-                holder.textViewAmount.setText("+" + currencyFormat.format(transaction.getAmount()));
-            } else if (type.equals("WITHDRAW")) {
-                holder.textViewType.setText("Withdraw / Keluar");
-                holder.textViewAmount
-                        .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.error_red));
-                holder.textViewAmount.setText("-" + currencyFormat.format(transaction.getAmount()));
+            // Newest first; fields are read straight from the log's columns
+            // Set transaction type; deposits and received transfers add to the balance
+            TransactionType type = transactions.getType(position);
+            boolean credit = type == TransactionType.DEPOSIT || type == TransactionType.TRANSFER_IN;
+            switch (type != null ? type : TransactionType.WITHDRAW) {
+                case DEPOSIT:
+                    holder.textViewType.setText("Deposit / Masuk");
+                    break;
+                case WITHDRAW:
+                    holder.textViewType.setText("Withdraw / Keluar");
+                    break;
+                case TRANSFER:
+                    holder.textViewType.setText("Transfer / Pindahan");
+                    break;
+                case TRANSFER_IN:
+                    holder.textViewType.setText("Transfer Received / Pindahan Masuk");
+                    break;
             }
+            holder.textViewAmount.setTextColor(ContextCompat.getColor(holder.itemView.getContext(),
+                    credit ? R.color.success_green : R.color.error_red));
+            holder.textViewAmount.setText((credit ? "+" : "-") + CurrencyFormatter.formatRM(transactions.getAmount(position)));
 
             // Set date
-            holder.textViewDate.setText(transaction.getDate());
+            holder.textViewDate.setText(DateFormatter.format(transactions.getTimestamp(position)));
 
             // Set balance after transaction
-            holder.textViewBalance.setText("Balance: " + currencyFormat.format(transaction.getBalanceAfter()));
+            holder.textViewBalance.setText("Balance: " + CurrencyFormatter.formatRM(transactions.getBalanceAfter(position)));
         }
 
         @Override
@@ -0,0 +1,166 @@
+package com.example.raybank.model;
+
+import com.example.raybank.utils.Money;
+
+/**
+ * Snapshot of an account's state after a given number of transactions.
+ * Holds the balance and running totals per transaction type, so the account can be
+ * rebuilt from the snapshot plus the transactions after it instead of the full history.
+ * Amounts are in sen.
+ */
+public class AccountSnapshot {
+    /** Number of new transactions after which a fresh snapshot is taken. */
+    public static final int INTERVAL = 100;
+
+    private long sequence;
+    private long balance;
+    private int depositCount;
+    private long depositTotal;
+    private int withdrawCount;
+    private long withdrawTotal;
+    private int transferCount;
+    private long transferTotal;
+
+    /**
+     * Default constructor.
+     */
+    public AccountSnapshot() {
+    }
+
+    /**
+     * Copy constructor.
+     */
+    public AccountSnapshot(AccountSnapshot other) {
+        this.sequence = other.sequence;
+        this.balance = other.balance;
+        this.depositCount = other.depositCount;
+        this.depositTotal = other.depositTotal;
+        this.withdrawCount = other.withdrawCount;
+        this.withdrawTotal = other.withdrawTotal;
+        this.transferCount = other.transferCount;
+        this.transferTotal = other.transferTotal;
+    }
+
+    /**
+     * Fold the next transaction into this snapshot.
+     * The balance is moved by the transaction's amount, so the state follows from the
+     * events alone and not from the balance stored with them.
+     *
+     * @param transaction The transaction at position {@link #getSequence()}
+     */
+    public void apply(Transaction transaction) {
+        apply(transaction.getType(), transaction.getAmount());
+    }
+
+    /**
+     * Fold the next transaction into this snapshot, given its type and amount.
+     *
+     * @param type   Transaction type, or null if unknown, which leaves the balance as it is
+     * @param amount Transaction amount in sen
+     * @throws ArithmeticException if the balance or a total would overflow
+     */
+    public void apply(TransactionType type, long amount) {
+        apply(type, amount, type == null ? balance
+                : type.isCredit() ? Money.add(balance, amount) : Money.subtract(balance, amount));
+    }
+
+    /**
+     * Fold the next transaction into this snapshot, given its fields and the balance it left.
+     *
+     * @param type         Transaction type, or null if unknown
+     * @param amount       Transaction amount in sen
+     * @param balanceAfter Balance after the transaction in sen
+     */
+    public void apply(TransactionType type, long amount, long balanceAfter) {
+        sequence++;
+        balance = balanceAfter;
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case DEPOSIT:
+                depositCount++;
+                depositTotal = Money.add(depositTotal, amount);
+                break;
+            case WITHDRAW:
+                withdrawCount++;
+                withdrawTotal = Money.add(withdrawTotal, amount);
+                break;
+            case TRANSFER:
+                transferCount++;
+                transferTotal = Money.add(transferTotal, amount);
+                break;
+            case TRANSFER_IN:
+                // Only moves the balance; the transfer totals count money sent
+                break;
+        }
+    }
+
+    // Getters and Setters
+    /**
+     * Get the number of transactions folded into this snapshot.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public void setBalance(long balance) {
+        this.balance = balance;
+    }
+
+    public int getDepositCount() {
+        return depositCount;
+    }
+
+    public void setDepositCount(int depositCount) {
+        this.depositCount = depositCount;
+    }
+
+    public long getDepositTotal() {
+        return depositTotal;
+    }
+
+    public void setDepositTotal(long depositTotal) {
+        this.depositTotal = depositTotal;
+    }
+
+    public int getWithdrawCount() {
+        return withdrawCount;
+    }
+
+    public void setWithdrawCount(int withdrawCount) {
+        this.withdrawCount = withdrawCount;
+    }
+
+    public long getWithdrawTotal() {
+        return withdrawTotal;
+    }
+
+    public void setWithdrawTotal(long withdrawTotal) {
+        this.withdrawTotal = withdrawTotal;
+    }
+
+    public int getTransferCount() {
+        return transferCount;
+    }
+
+    public void setTransferCount(int transferCount) {
+        this.transferCount = transferCount;
+    }
+
+    public long getTransferTotal() {
+        return transferTotal;
+    }
+
+    public void setTransferTotal(long transferTotal) {
+        this.transferTotal = transferTotal;
+    }
+}
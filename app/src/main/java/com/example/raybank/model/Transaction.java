@@ -1,41 +1,39 @@
 package com.example.raybank.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import com.example.raybank.utils.IdGenerator;
 
 /**
  * Transaction model class representing a bank transaction.
  */
 public class Transaction {
     private String transactionId;
-    private String type; // "DEPOSIT" or "WITHDRAW"
-    private double amount;
-    private double balanceAfter;
-    private String date;
+    private TransactionType type;
+    private long amount; // In sen
+    private long balanceAfter; // In sen
+    private long timestamp; // Epoch milliseconds
     private String description;
 
     /**
      * Default constructor.
      */
     public Transaction() {
-        this.date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
+        this.timestamp = System.currentTimeMillis();
     }
 
     /**
      * Constructor to create a new transaction.
      * 
-     * @param type         Transaction type ("DEPOSIT", "WITHDRAW", "TRANSFER")
-     * @param amount       Transaction amount
-     * @param balanceAfter Balance after transaction
+     * @param type         Transaction type
+     * @param amount       Transaction amount in sen
+     * @param balanceAfter Balance after transaction in sen
      * @param description  Description of the transaction
      */
-    public Transaction(String type, double amount, double balanceAfter, String description) {
-        this.transactionId = "TXN" + System.currentTimeMillis();
+    public Transaction(TransactionType type, long amount, long balanceAfter, String description) {
+        this.transactionId = IdGenerator.getInstance().nextTransactionId();
         this.type = type;
         this.amount = amount;
         this.balanceAfter = balanceAfter;
-        this.date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
+        this.timestamp = System.currentTimeMillis();
         this.description = description;
     }
 
@@ -48,36 +46,40 @@ public class Transaction {
         this.transactionId = transactionId;
     }
 
-    public String getType() {
+    public TransactionType getType() {
         return type;
     }
 
-    public void setType(String type) {
+    public void setType(TransactionType type) {
         this.type = type;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
-    public double getBalanceAfter() {
+    public long getBalanceAfter() {
         return balanceAfter;
     }
 
-    public void setBalanceAfter(double balanceAfter) {
+    public void setBalanceAfter(long balanceAfter) {
         this.balanceAfter = balanceAfter;
     }
 
-    public String getDate() {
-        return date;
+    /**
+     * Get when the transaction was made, in epoch milliseconds.
+     * Format it for display with {@link com.example.raybank.utils.DateFormatter}.
+     */
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public void setDate(String date) {
-        this.date = date;
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
     }
 
     public String getDescription() {
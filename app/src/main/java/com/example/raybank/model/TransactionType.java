@@ -0,0 +1,67 @@
+package com.example.raybank.model;
+
+/**
+ * Kind of a {@link Transaction}, with the one-byte code it is stored as.
+ */
+public enum TransactionType {
+    DEPOSIT((byte) 1),
+    WITHDRAW((byte) 2),
+    /** Money sent to another account. */
+    TRANSFER((byte) 3),
+    /** Money received from another account. */
+    TRANSFER_IN((byte) 4);
+
+    // Indexed by code, so decoding is an array lookup
+    private static final TransactionType[] BY_CODE = new TransactionType[values().length + 1];
+
+    static {
+        for (TransactionType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    TransactionType(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Get the code this type is stored as. 0 is never used, so it can mean "no type".
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Whether this type adds its amount to the balance; the others take it away.
+     */
+    public boolean isCredit() {
+        return this == DEPOSIT || this == TRANSFER_IN;
+    }
+
+    /**
+     * Get the type stored as a code.
+     *
+     * @return The type, or null for 0 or an unknown code
+     */
+    public static TransactionType fromCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Get the type stored by name, as older versions did.
+     *
+     * @return The type, or null if the name is null or unknown
+     */
+    public static TransactionType fromName(String name) {
+        if (name != null) {
+            for (TransactionType type : values()) {
+                if (type.name().equals(name)) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+}
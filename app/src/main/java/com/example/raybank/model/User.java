@@ -1,5 +1,6 @@
 package com.example.raybank.model;
 
+import com.example.raybank.utils.IdGenerator;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,7 +14,7 @@ public class User {
     private String fullName;
     private String phoneNumber;
     private String accountNumber;
-    private double balance;
+    private long balance; // In sen
     private List<Transaction> transactions;
     private String language; // "en" or "ms"
     private boolean biometricEnabled;
@@ -43,20 +44,19 @@ public class User {
         this.fullName = fullName;
         this.phoneNumber = phoneNumber;
         this.accountNumber = generateAccountNumber();
-        this.balance = 0.0;
+        this.balance = 0;
         this.transactions = new ArrayList<>();
         this.language = "en";
         this.biometricEnabled = false;
     }
 
     /**
-     * Generates a random account number.
+     * Generates a unique account number with a check digit.
      * 
      * @return String representation of the account number
      */
     private String generateAccountNumber() {
-        // Generate a simple account number
-        return "ACC" + System.currentTimeMillis() % 1000000000;
+        return IdGenerator.getInstance().nextAccountNumber();
     }
 
     // Getters and Setters
@@ -108,11 +108,11 @@ public class User {
         this.accountNumber = accountNumber;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
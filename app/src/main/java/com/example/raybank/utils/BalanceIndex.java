@@ -0,0 +1,276 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Index over a user's history for balances at a point in time and totals over a time range.
+ *
+ * Every {@link #CHECKPOINT_INTERVAL} rows a checkpoint records the time of the row and the
+ * balance and running credit and debit totals before it. Balances are folded from the
+ * amounts, like {@link AccountReplay}, so a drifted stored balance does not carry over. A query binary-searches the
+ * checkpoints, then reads at most one interval of rows from the {@link TransactionReader},
+ * so it costs O(log n + K) however long the history is. The interval matches the pages
+ * the stores read, so that is a single page.
+ *
+ * The index also keeps each local day that has transactions with its closing balance,
+ * answered from memory, for charts. Days without transactions are not listed; their
+ * balance is the closing balance of the day before.
+ *
+ * Rows are taken to be in time order, as they are appended. A row timestamped before the
+ * one ahead of it, after a clock change, counts as happening at that earlier row's time.
+ * Methods are synchronized; those reading rows are best called on the I/O thread.
+ */
+public class BalanceIndex {
+    /** Rows between checkpoints. */
+    public static final int CHECKPOINT_INTERVAL = LazyTransactionList.PAGE_SIZE;
+
+    // Used to find the start of each row's day, in the index's time zone
+    private final Calendar calendar;
+    private TransactionReader reader;
+    private int size;
+
+    // Checkpoint i is taken before row i * CHECKPOINT_INTERVAL
+    private long[] checkpointTimes = new long[16];
+    private long[] checkpointBalances = new long[16];
+    private long[] checkpointCredits = new long[16];
+    private long[] checkpointDebits = new long[16];
+    private int checkpointCount;
+
+    // Local days with transactions: start of day and balance after its last row
+    private long[] dayStarts = new long[16];
+    private long[] dayClosingBalances = new long[16];
+    private int dayCount;
+
+    // State after the last indexed row
+    private long openingBalance;
+    private long balance;
+    private long credits;
+    private long debits;
+    private long time = Long.MIN_VALUE;
+    // End of the latest day, so each row's day is only worked out when a new day starts
+    private long dayEnd = Long.MIN_VALUE;
+
+    public BalanceIndex() {
+        this(TimeZone.getDefault());
+    }
+
+    /**
+     * @param timeZone Time zone the day boundaries are taken in
+     */
+    public BalanceIndex(TimeZone timeZone) {
+        this.calendar = Calendar.getInstance(timeZone);
+    }
+
+    /**
+     * Index the rows a reader has beyond those already indexed.
+     * The reader must cover the same history as earlier ones, possibly with more rows appended;
+     * it is kept for the queries that read rows.
+     *
+     * @param storedBalance The user's stored balance, taken as the opening balance while there
+     *                      are no transactions, as {@link DataManager#loadAccount} does
+     */
+    public synchronized void update(TransactionReader reader, long storedBalance) {
+        if (reader.size() < size) {
+            throw new IllegalArgumentException("Reader has fewer rows than the index");
+        }
+        this.reader = reader;
+        if (size == 0) {
+            openingBalance = AccountReplay.openingBalance(reader.size() > 0 ? reader.get(0) : null, storedBalance);
+            balance = openingBalance;
+        }
+        for (int row = size; row < reader.size(); row++) {
+            Transaction transaction = reader.get(row);
+            long rowTime = Math.max(time, transaction.getTimestamp());
+            if (row % CHECKPOINT_INTERVAL == 0) {
+                addCheckpoint(rowTime);
+            }
+
+            TransactionType type = transaction.getType();
+            balance = Money.add(balance, AccountReplay.signedAmount(type, transaction.getAmount()));
+            if (type != null && type.isCredit()) {
+                credits = Money.add(credits, transaction.getAmount());
+            } else if (type != null) {
+                debits = Money.add(debits, transaction.getAmount());
+            }
+            time = rowTime;
+
+            if (rowTime >= dayEnd) {
+                addDay(rowTime);
+            }
+            dayClosingBalances[dayCount - 1] = balance;
+        }
+        size = reader.size();
+    }
+
+    /**
+     * Get the number of rows indexed.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the balance before the first transaction.
+     */
+    public synchronized long getOpeningBalance() {
+        return openingBalance;
+    }
+
+    /**
+     * Get the balance after every transaction made at or before a time.
+     *
+     * @param timestamp Epoch milliseconds
+     * @return The balance in sen; the opening balance if there are no transactions by then
+     */
+    public synchronized long getBalanceAt(long timestamp) {
+        return timestamp == Long.MAX_VALUE ? balance : scanTo(timestamp + 1)[0];
+    }
+
+    /**
+     * Get the total of deposits and received transfers made in a time range.
+     *
+     * @param from Start of the range in epoch milliseconds, inclusive
+     * @param to   End of the range in epoch milliseconds, exclusive
+     * @return The total in sen
+     */
+    public synchronized long getCreditTotal(long from, long to) {
+        return to <= from ? 0 : scanTo(to)[1] - scanTo(from)[1];
+    }
+
+    /**
+     * Get the total of withdrawals and sent transfers made in a time range.
+     *
+     * @param from Start of the range in epoch milliseconds, inclusive
+     * @param to   End of the range in epoch milliseconds, exclusive
+     * @return The total in sen
+     */
+    public synchronized long getDebitTotal(long from, long to) {
+        return to <= from ? 0 : scanTo(to)[2] - scanTo(from)[2];
+    }
+
+    /**
+     * Get the number of local days that have transactions.
+     */
+    public synchronized int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Get the start of a day with transactions, in epoch milliseconds.
+     *
+     * @param day Index of the day, 0 being the earliest
+     */
+    public synchronized long getDayStart(int day) {
+        checkDay(day);
+        return dayStarts[day];
+    }
+
+    /**
+     * Get the balance at the end of a day with transactions, in sen.
+     *
+     * @param day Index of the day, 0 being the earliest
+     */
+    public synchronized long getClosingBalance(int day) {
+        checkDay(day);
+        return dayClosingBalances[day];
+    }
+
+    /**
+     * Find the latest day with transactions that starts at or before a time.
+     *
+     * @return The day's index, or -1 if every day starts later
+     */
+    public synchronized int findDay(long timestamp) {
+        return floor(dayStarts, dayCount, timestamp);
+    }
+
+    /**
+     * Get the balance, credit total and debit total over the rows made before a time.
+     */
+    private long[] scanTo(long bound) {
+        if (bound == Long.MIN_VALUE) {
+            return new long[]{openingBalance, 0, 0};
+        }
+        int checkpoint = floor(checkpointTimes, checkpointCount, bound - 1);
+        if (checkpoint < 0) {
+            return new long[]{openingBalance, 0, 0};
+        }
+        long scanBalance = checkpointBalances[checkpoint];
+        long scanCredits = checkpointCredits[checkpoint];
+        long scanDebits = checkpointDebits[checkpoint];
+        long scanTime = checkpointTimes[checkpoint];
+        int end = Math.min(size, (checkpoint + 1) * CHECKPOINT_INTERVAL);
+        for (int row = checkpoint * CHECKPOINT_INTERVAL; row < end; row++) {
+            Transaction transaction = reader.get(row);
+            scanTime = Math.max(scanTime, transaction.getTimestamp());
+            if (scanTime >= bound) {
+                break;
+            }
+            TransactionType type = transaction.getType();
+            scanBalance = Money.add(scanBalance, AccountReplay.signedAmount(type, transaction.getAmount()));
+            if (type != null && type.isCredit()) {
+                scanCredits = Money.add(scanCredits, transaction.getAmount());
+            } else if (type != null) {
+                scanDebits = Money.add(scanDebits, transaction.getAmount());
+            }
+        }
+        return new long[]{scanBalance, scanCredits, scanDebits};
+    }
+
+    private void addCheckpoint(long rowTime) {
+        if (checkpointCount == checkpointTimes.length) {
+            int capacity = checkpointCount * 2;
+            checkpointTimes = Arrays.copyOf(checkpointTimes, capacity);
+            checkpointBalances = Arrays.copyOf(checkpointBalances, capacity);
+            checkpointCredits = Arrays.copyOf(checkpointCredits, capacity);
+            checkpointDebits = Arrays.copyOf(checkpointDebits, capacity);
+        }
+        checkpointTimes[checkpointCount] = rowTime;
+        checkpointBalances[checkpointCount] = balance;
+        checkpointCredits[checkpointCount] = credits;
+        checkpointDebits[checkpointCount] = debits;
+        checkpointCount++;
+    }
+
+    private void addDay(long rowTime) {
+        if (dayCount == dayStarts.length) {
+            dayStarts = Arrays.copyOf(dayStarts, dayCount * 2);
+            dayClosingBalances = Arrays.copyOf(dayClosingBalances, dayCount * 2);
+        }
+        calendar.setTimeInMillis(rowTime);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStarts[dayCount++] = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        dayEnd = calendar.getTimeInMillis();
+    }
+
+    private void checkDay(int day) {
+        if (day < 0 || day >= dayCount) {
+            throw new IndexOutOfBoundsException("Day: " + day + ", Days: " + dayCount);
+        }
+    }
+
+    /**
+     * Find the last of the first {@code count} sorted values that is at most {@code key}, or -1.
+     */
+    private static int floor(long[] values, int count, long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
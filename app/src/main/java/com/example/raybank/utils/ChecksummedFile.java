@@ -0,0 +1,95 @@
+package com.example.raybank.utils;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Small file replaced as a whole, with a CRC32 of its contents checked on every read.
+ *
+ * A write goes to a temporary file that is renamed over the old one, so a crash leaves
+ * either the old or the new contents, never a mix. Layout: int length, long CRC32,
+ * then the data, little-endian.
+ */
+final class ChecksummedFile {
+    private static final int HEADER_SIZE = 12;
+
+    private final File file;
+    private final File tempFile;
+
+    ChecksummedFile(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Replace the contents of the file.
+     *
+     * @param sync true to fsync the data before it is renamed into place
+     */
+    void write(byte[] data, boolean sync) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(data.length).putLong(crc.getValue());
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(header.array());
+            out.write(data);
+            if (sync) {
+                out.getFD().sync();
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Read the contents of the file.
+     *
+     * @return The data, or null if the file does not exist
+     * @throws IOException if the file is truncated or its checksum does not match
+     */
+    byte[] read() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] headerBytes = new byte[HEADER_SIZE];
+            in.readFully(headerBytes);
+            ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+            int length = header.getInt();
+            long checksum = header.getLong();
+            if (length < 0 || length > file.length() - HEADER_SIZE) {
+                throw new IOException("Corrupt length in " + file);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            return data;
+        } catch (EOFException e) {
+            throw new IOException("Truncated " + file, e);
+        }
+    }
+}
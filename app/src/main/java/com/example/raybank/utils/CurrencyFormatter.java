@@ -1,37 +1,61 @@
 package com.example.raybank.utils;
 
-import java.text.NumberFormat;
-import java.util.Locale;
-
 /**
  * Utility class for formatting Malaysian Ringgit (RM) currency.
+ * Amounts are in sen, as held by {@link Money}, and are formatted with integer
+ * arithmetic in the Malaysian style (comma grouping, point decimals).
  */
 public class CurrencyFormatter {
-    private static final Locale MALAYSIA_LOCALE = new Locale.Builder().setLanguage("ms").setRegion("MY").build();
 
     /**
      * Format amount as Malaysian Ringgit (RM).
-     * 
-     * @param amount The amount to format
+     *
+     * @param sen The amount to format, in sen
      * @return Formatted string like "RM1,234.56"
      */
-    public static String formatRM(double amount) {
-        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(MALAYSIA_LOCALE);
-        // Replace MYR with RM
-        String formatted = currencyFormat.format(amount);
-        return formatted.replace("MYR", "RM");
+    public static String formatRM(long sen) {
+        StringBuilder builder = new StringBuilder(32);
+        if (sen < 0) {
+            builder.append('-');
+        }
+        builder.append("RM");
+        appendAmount(builder, sen);
+        return builder.toString();
     }
 
     /**
      * Format amount as Malaysian Ringgit without currency symbol.
-     * 
-     * @param amount The amount to format
+     *
+     * @param sen The amount to format, in sen
      * @return Formatted string like "1,234.56"
      */
-    public static String formatAmount(double amount) {
-        NumberFormat numberFormat = NumberFormat.getNumberInstance(MALAYSIA_LOCALE);
-        numberFormat.setMinimumFractionDigits(2);
-        numberFormat.setMaximumFractionDigits(2);
-        return numberFormat.format(amount);
+    public static String formatAmount(long sen) {
+        StringBuilder builder = new StringBuilder(32);
+        if (sen < 0) {
+            builder.append('-');
+        }
+        appendAmount(builder, sen);
+        return builder.toString();
+    }
+
+    /**
+     * Append the absolute value of an amount with grouping and two decimals.
+     */
+    private static void appendAmount(StringBuilder builder, long sen) {
+        long ringgit = Math.abs(sen / Money.SEN_PER_RINGGIT);
+        int cents = (int) Math.abs(sen % Money.SEN_PER_RINGGIT);
+
+        String digits = Long.toString(ringgit);
+        int firstGroup = digits.length() % 3 == 0 ? 3 : digits.length() % 3;
+        builder.append(digits, 0, firstGroup);
+        for (int i = firstGroup; i < digits.length(); i += 3) {
+            builder.append(',').append(digits, i, i + 3);
+        }
+
+        builder.append('.');
+        if (cents < 10) {
+            builder.append('0');
+        }
+        builder.append(cents);
     }
 }
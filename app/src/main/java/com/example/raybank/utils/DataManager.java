@@ -2,75 +2,279 @@ package com.example.raybank.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import com.example.raybank.BankAccount;
+import com.example.raybank.model.AccountSnapshot;
 import com.example.raybank.model.Transaction;
 import com.example.raybank.model.User;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
- * DataManager utility class for handling JSON-based data storage using SharedPreferences.
+ * DataManager utility class for handling data storage.
+ * Session state (current user, onboarding, schema version) is kept in SharedPreferences,
+ * and users and their transactions are kept in a {@link UserStore}: either
+ * {@link SqliteUserStore} or the per-user preferences files and ledgers of {@link PrefsUserStore}.
+ *
+ * Writes go through a {@link UnitOfWork}, which hands every user it touched to the store
+ * in one commit and then points the current user at the right one. Each commit picks a
+ * {@link DurabilityMode}, and its latency is recorded per mode in {@link #getLatencyStats}.
+ *
+ * The *Async methods run on a single process-wide I/O thread and report back on the
+ * main thread, so the UI never waits on disk. Because there is only one I/O thread,
+ * reads and writes run in exactly the order they were submitted. A commit requested from
+ * a task already on the I/O thread is written by that task, for the same reason.
+ *
+ * The layout on disk is versioned by {@link #SCHEMA_VERSION}. Installs still holding
+ * the legacy "users" array are upgraded in the background by {@link LegacyUserMigration}.
  */
 public class DataManager {
     private static final String PREFS_NAME = "BankAppPrefs";
-    private static final String KEY_USERS = "users";
+    static final String KEY_SCHEMA_VERSION = "schema_version";
+    /** 1: users in a {@link UserStore}. 0: everything in the "users" array. */
+    static final int SCHEMA_VERSION = 1;
+
     private static final String KEY_CURRENT_USER = "current_user";
+    private static final String KEY_CURRENT_USER_ID = "current_user_id";
     private static final String KEY_ONBOARDING_COMPLETE = "onboarding_complete";
+    private static final String KEY_STORAGE_BACKEND = "storage_backend";
+    private static final String BACKEND_PREFS = "prefs";
+    private static final String BACKEND_SQLITE = "sqlite";
+
+    private static volatile Thread ioThread;
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        ioThread = new Thread(runnable, "DataManager-io");
+        return ioThread;
+    });
 
     private SharedPreferences sharedPreferences;
     private Context context;
+    private UserStore store;
+    private LegacyUserMigration legacyMigration;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<DurabilityMode, WriteLatencyStats> latencyStats = new EnumMap<>(DurabilityMode.class);
+    private final Object groupLock = new Object();
+    // By userId; only used on the I/O thread
+    private final Map<String, BalanceIndex> balanceIndexes = new HashMap<>();
+    // Group commit still taking members; its write is already queued on the I/O thread
+    private List<GroupMember> openGroup;
 
     public DataManager(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Create a DataManager on a specific storage backend, for example to compare backends.
+     *
+     * @param store The backend to use, or null to use the one recorded for this install
+     */
+    public DataManager(Context context, UserStore store) {
         this.context = context;
         this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.store = store;
+        this.legacyMigration = new LegacyUserMigration(sharedPreferences, this);
+        for (DurabilityMode mode : DurabilityMode.values()) {
+            latencyStats.put(mode, new WriteLatencyStats());
+        }
+        // Queued first, so every later I/O task sees the current-user pointer
+        submit(() -> {
+            upgradeSchema();
+            return null;
+        }, null);
+    }
+
+    /**
+     * Get the schema version of the data on disk.
+     */
+    public int getSchemaVersion() {
+        return sharedPreferences.getInt(KEY_SCHEMA_VERSION, 0);
+    }
+
+    /**
+     * Get the latency of the commits made so far with a durability mode.
+     */
+    public WriteLatencyStats getLatencyStats(DurabilityMode mode) {
+        return latencyStats.get(mode);
+    }
+
+    /**
+     * Callback for asynchronous DataManager operations, invoked on the main thread.
+     */
+    public interface Callback<T> {
+        void onComplete(T result);
+    }
+
+    /**
+     * Run a task on the I/O thread after every task submitted before it.
+     *
+     * @param task     The work to run off the main thread
+     * @param callback Receives the result on the main thread, may be null
+     * @return A future for the result
+     */
+    public <T> Future<T> submit(Callable<T> task, Callback<T> callback) {
+        return IO_EXECUTOR.submit(() -> {
+            T result = task.call();
+            if (callback != null) {
+                mainHandler.post(() -> callback.onComplete(result));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Get user by email on the I/O thread.
+     */
+    public Future<User> getUserByEmailAsync(String email, Callback<User> callback) {
+        return submit(() -> getUserByEmail(email), callback);
+    }
+
+    /**
+     * Authenticate user with email and password on the I/O thread.
+     */
+    public Future<User> authenticateUserAsync(String email, String password, Callback<User> callback) {
+        return submit(() -> authenticateUser(email, password), callback);
+    }
+
+    /**
+     * Get current logged-in user on the I/O thread.
+     */
+    public Future<User> getCurrentUserAsync(boolean includeTransactions, Callback<User> callback) {
+        return submit(() -> getCurrentUser(includeTransactions), callback);
+    }
+
+    /**
+     * Clear current user (logout) on the I/O thread.
+     */
+    public Future<Boolean> clearCurrentUserAsync(Callback<Boolean> callback) {
+        return submit(() -> sharedPreferences.edit().remove(KEY_CURRENT_USER_ID).commit(), callback);
+    }
+
+    /**
+     * Open a reader over a user's stored transactions on the I/O thread.
+     * Runs after every write submitted before it, so the reader includes them.
+     */
+    public Future<TransactionReader> openTransactionsAsync(User user, Callback<TransactionReader> callback) {
+        return submit(() -> openTransactions(user), callback);
+    }
+
+    /**
+     * Get a page of a user's transactions on the I/O thread.
+     * Runs after every write submitted before it, so the page includes them.
+     */
+    public Future<TransactionPage> getTransactionsAsync(String userId, long beforeCursor, int limit,
+            Callback<TransactionPage> callback) {
+        return submit(() -> getTransactions(userId, beforeCursor, limit), callback);
+    }
+
+    /**
+     * Rebuild a user's account on the I/O thread.
+     * Runs after every write submitted before it, so the account includes them.
+     */
+    public Future<BankAccount> loadAccountAsync(User user, Callback<BankAccount> callback) {
+        return submit(() -> loadAccount(user), callback);
+    }
+
+    /**
+     * Audit a user's whole history on the I/O thread.
+     * Runs after every write submitted before it, so the audit includes them.
+     */
+    public Future<AccountReplay.Audit> auditAccountAsync(User user, Callback<AccountReplay.Audit> callback) {
+        return submit(() -> auditAccount(user), callback);
+    }
+
+    /**
+     * Start a unit of work that groups several changes into one commit.
+     */
+    public UnitOfWork beginWork() {
+        return new UnitOfWork();
     }
 
     /**
-     * Save a user to the JSON list.
+     * Save a user and update the lookup indexes.
      */
     public boolean saveUser(User user) {
+        return beginWork().putUser(user).commit();
+    }
+
+    /**
+     * Record a new transaction for a user.
+     * Appends the single transaction and rewrites only the small user record
+     * (balance and profile), so the cost does not grow with history.
+     *
+     * @param user        The user the transaction belongs to, already holding the new balance
+     * @param transaction The transaction to append
+     * @return true if the transaction was stored, false otherwise
+     */
+    public boolean appendTransaction(User user, Transaction transaction) {
+        return appendTransactions(user, Collections.singletonList(transaction));
+    }
+
+    /**
+     * Record several new transactions for a user in a single commit.
+     *
+     * @param user         The user the transactions belong to, already holding the new balance
+     * @param transactions The transactions to append, oldest first
+     * @return true if the transactions were stored, false otherwise
+     */
+    public boolean appendTransactions(User user, List<Transaction> transactions) {
+        return beginWork().appendTransactions(user, transactions).commit();
+    }
+
+    /**
+     * Get user by userId.
+     */
+    public User getUserById(String userId) {
+        return loadUser(userId, true);
+    }
+
+    /**
+     * Get user by email.
+     */
+    public User getUserByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
         try {
-            JSONArray usersArray = getUsersArray();
-            
-            // Check if user already exists
-            for (int i = 0; i < usersArray.length(); i++) {
-                JSONObject userObj = usersArray.getJSONObject(i);
-                if (userObj.getString("email").equals(user.getEmail())) {
-                    // Update existing user
-                    usersArray.put(i, userToJson(user));
-                    sharedPreferences.edit().putString(KEY_USERS, usersArray.toString()).apply();
-                    return true;
-                }
+            User user = getStore().getUserByEmail(email);
+            if (user != null) {
+                return user;
             }
-            
-            // Add new user
-            usersArray.put(userToJson(user));
-            sharedPreferences.edit().putString(KEY_USERS, usersArray.toString()).apply();
-            return true;
-        } catch (JSONException e) {
+        } catch (IOException e) {
             e.printStackTrace();
-            return false;
         }
+        return legacyMigration.isPending() ? legacyMigration.findByEmail(email) : null;
     }
 
     /**
-     * Get user by email.
+     * Get user by account number.
      */
-    public User getUserByEmail(String email) {
+    public User getUserByAccountNumber(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
         try {
-            JSONArray usersArray = getUsersArray();
-            for (int i = 0; i < usersArray.length(); i++) {
-                JSONObject userObj = usersArray.getJSONObject(i);
-                if (userObj.getString("email").equals(email)) {
-                    return jsonToUser(userObj);
-                }
+            User user = getStore().getUserByAccountNumber(accountNumber);
+            if (user != null) {
+                return user;
             }
-        } catch (JSONException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        return null;
+        return legacyMigration.isPending() ? legacyMigration.findByAccountNumber(accountNumber) : null;
     }
 
     /**
@@ -86,37 +290,34 @@ public class DataManager {
 
     /**
      * Save current logged-in user.
+     * Only the userId is stored; the user itself must already have been saved.
      */
     public void setCurrentUser(User user) {
-        try {
-            JSONObject userJson = userToJson(user);
-            sharedPreferences.edit().putString(KEY_CURRENT_USER, userJson.toString()).apply();
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        sharedPreferences.edit().putString(KEY_CURRENT_USER_ID, user.getUserId()).apply();
     }
 
     /**
      * Get current logged-in user.
      */
     public User getCurrentUser() {
-        try {
-            String userJsonStr = sharedPreferences.getString(KEY_CURRENT_USER, null);
-            if (userJsonStr != null) {
-                JSONObject userJson = new JSONObject(userJsonStr);
-                return jsonToUser(userJson);
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return getCurrentUser(true);
+    }
+
+    /**
+     * Get current logged-in user.
+     *
+     * @param includeTransactions false to skip loading the history when only the
+     *                            profile and balance are needed
+     */
+    public User getCurrentUser(boolean includeTransactions) {
+        return loadUser(sharedPreferences.getString(KEY_CURRENT_USER_ID, null), includeTransactions);
     }
 
     /**
      * Clear current user (logout).
      */
     public void clearCurrentUser() {
-        sharedPreferences.edit().remove(KEY_CURRENT_USER).apply();
+        sharedPreferences.edit().remove(KEY_CURRENT_USER_ID).apply();
     }
 
     /**
@@ -134,91 +335,495 @@ public class DataManager {
     }
 
     /**
-     * Get all users as JSONArray.
+     * Open a random-access reader over a user's stored transactions.
+     * Users whose history has not been stored by the backend yet are saved first.
+     *
+     * @return The reader, or null if the transactions could not be read
+     */
+    public TransactionReader openTransactions(User user) {
+        try {
+            return getStore().openTransactions(user);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Get a user's balance index, bringing it up to date with their stored history.
+     * The index is kept between calls, so only transactions added since the last call are read.
+     * Must run on the I/O thread, like the queries that read rows through the index.
+     *
+     * @return The index, or null if the history could not be opened
+     */
+    public BalanceIndex getBalanceIndex(User user) {
+        TransactionReader reader = openTransactions(user);
+        if (reader == null) {
+            return null;
+        }
+        BalanceIndex index = balanceIndexes.get(user.getUserId());
+        if (index == null || reader.size() < index.size()) {
+            index = new BalanceIndex();
+            balanceIndexes.put(user.getUserId(), index);
+        }
+        index.update(reader, user.getBalance());
+        return index;
+    }
+
+    /**
+     * Get a page of a user's transactions, newest first.
+     * Each page is one indexed read, however long the history is. Users that have not
+     * been migrated from the legacy array yet are saved first.
+     *
+     * @param beforeCursor {@link TransactionPage#FIRST} for the newest transactions, or the
+     *                     next cursor of the previous page
+     * @param limit        Maximum number of transactions in the page
+     * @return The page, or null if the transactions could not be read
+     */
+    public TransactionPage getTransactions(String userId, long beforeCursor, int limit) {
+        if (!hasStoredUser(userId)) {
+            User user = loadUser(userId, true);
+            if (user == null || !saveUser(user)) {
+                return null;
+            }
+        }
+        try {
+            return getStore().getTransactions(userId, beforeCursor, limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild a user's account by folding their transactions, starting from their latest
+     * snapshot instead of replaying their whole history.
+     * Users without a snapshot yet are folded from the balance before their first
+     * transaction; only users with no transactions, or whose history cannot be read,
+     * start from their stored balance.
+     */
+    public BankAccount loadAccount(User user) {
+        try {
+            AccountSnapshot snapshot = getStore().getSnapshot(user.getUserId());
+            if (snapshot != null) {
+                return new BankAccount(snapshot,
+                        getStore().getTransactionsSince(user.getUserId(), snapshot.getSequence()));
+            }
+            List<Transaction> history = getStore().getTransactionsSince(user.getUserId(), 0);
+            AccountSnapshot opening = new AccountSnapshot();
+            opening.setBalance(AccountReplay.openingBalance(history.isEmpty() ? null : history.get(0),
+                    user.getBalance()));
+            return new BankAccount(opening, history);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new BankAccount(user.getBalance());
+    }
+
+    /**
+     * Fold a user's whole history in parallel and check every stored balance against it.
+     * The history is read into memory first, since store readers are not safe to share
+     * between threads. Must run on the I/O thread.
+     *
+     * @return The audit, or null if the history could not be read
+     */
+    public AccountReplay.Audit auditAccount(User user) {
+        TransactionReader reader = openTransactions(user);
+        if (reader == null) {
+            return null;
+        }
+        TransactionLog events = new TransactionLog();
+        for (int i = 0; i < reader.size(); i++) {
+            if (reader instanceof TransactionLedger.Reader) {
+                ((TransactionLedger.Reader) reader).appendTo(i, events);
+            } else {
+                events.add(reader.get(i));
+            }
+        }
+        long openingBalance = AccountReplay.openingBalance(events.isEmpty() ? null : events.get(0),
+                user.getBalance());
+        return AccountReplay.audit(events, openingBalance, AuditPool.INSTANCE);
+    }
+
+    // Created on first audit, with one worker per processor
+    private static final class AuditPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * A group of changes committed together.
+     * Each user touched is written once however many changes it received, and the
+     * current-user pointer is only moved after the store has committed.
+     */
+    public class UnitOfWork {
+        private final Map<String, User> users = new LinkedHashMap<>();
+        private final Map<String, List<Transaction>> appended = new LinkedHashMap<>();
+        private User currentUser;
+
+        private UnitOfWork() {
+        }
+
+        /**
+         * Save a user's record and index entries.
+         */
+        public UnitOfWork putUser(User user) {
+            users.put(user.getUserId(), user);
+            return this;
+        }
+
+        /**
+         * Append transactions for a user and save the record holding the new balance.
+         */
+        public UnitOfWork appendTransactions(User user, List<Transaction> transactions) {
+            putUser(user);
+            List<Transaction> list = appended.get(user.getUserId());
+            if (list == null) {
+                list = new ArrayList<>();
+                appended.put(user.getUserId(), list);
+            }
+            list.addAll(transactions);
+            return this;
+        }
+
+        /**
+         * Save a user and point the current-user entry at them.
+         */
+        public UnitOfWork setCurrentUser(User user) {
+            putUser(user);
+            currentUser = user;
+            return this;
+        }
+
+        /**
+         * Check whether this unit of work appends any transactions.
+         */
+        public boolean hasTransactions() {
+            for (List<Transaction> list : appended.values()) {
+                if (!list.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Write every change in this unit of work on the I/O thread, fsynced.
+         *
+         * @param callback Receives true on the main thread if everything was committed, may be null
+         */
+        public Future<Boolean> commitAsync(Callback<Boolean> callback) {
+            return commitAsync(DurabilityMode.SYNC, callback);
+        }
+
+        /**
+         * Write every change in this unit of work on the I/O thread.
+         *
+         * @param mode     How far the changes must reach before the commit completes
+         * @param callback Receives true on the main thread if everything was committed, may be null
+         */
+        public Future<Boolean> commitAsync(DurabilityMode mode, Callback<Boolean> callback) {
+            long requestedAt = System.nanoTime();
+            if (Thread.currentThread() == ioThread) {
+                // Queueing from the I/O thread would put the write behind reads submitted meanwhile
+                boolean committed = writeInOrder(mode, requestedAt);
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onComplete(committed));
+                }
+                FutureTask<Boolean> result = new FutureTask<>(() -> committed);
+                result.run();
+                return result;
+            }
+            if (mode == DurabilityMode.GROUP_COMMIT) {
+                return joinGroup(this, requestedAt, callback);
+            }
+            synchronized (groupLock) {
+                // Later group members must not be written ahead of this commit
+                openGroup = null;
+            }
+            return submit(() -> write(mode, requestedAt), callback);
+        }
+
+        /**
+         * Write every change in this unit of work on the calling thread, fsynced.
+         *
+         * @return true if everything was committed, false otherwise
+         */
+        public boolean commit() {
+            return commit(DurabilityMode.SYNC);
+        }
+
+        /**
+         * Write every change in this unit of work, waiting until it completes.
+         * A commit made from the I/O thread itself is written there and then, after any
+         * group requested before it.
+         *
+         * @param mode How far the changes must reach before the commit completes
+         * @return true if everything was committed, false otherwise
+         */
+        public boolean commit(DurabilityMode mode) {
+            long requestedAt = System.nanoTime();
+            if (Thread.currentThread() == ioThread) {
+                return writeInOrder(mode, requestedAt);
+            }
+            if (mode != DurabilityMode.GROUP_COMMIT) {
+                return write(mode, requestedAt);
+            }
+            try {
+                return joinGroup(this, requestedAt, null).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+
+        /**
+         * Write this unit on the I/O thread, after the open group, whose members were
+         * requested before it. A group commit joins that group, sharing its write and fsync.
+         */
+        private boolean writeInOrder(DurabilityMode mode, long requestedAt) {
+            List<GroupMember> group;
+            synchronized (groupLock) {
+                group = openGroup;
+                openGroup = null;
+            }
+            if (mode != DurabilityMode.GROUP_COMMIT) {
+                if (group != null) {
+                    commitGroup(group);
+                }
+                return write(mode, requestedAt);
+            }
+            GroupMember member = new GroupMember(this, requestedAt, null);
+            if (group == null) {
+                group = new ArrayList<>();
+            }
+            synchronized (groupLock) {
+                group.add(member);
+            }
+            commitGroup(group);
+            return member.committed;
+        }
+
+        private boolean write(DurabilityMode mode, long requestedAt) {
+            boolean committed = write(mode != DurabilityMode.ASYNC);
+            latencyStats.get(mode).record(System.nanoTime() - requestedAt);
+            return committed;
+        }
+
+        private boolean write(boolean sync) {
+            try {
+                getStore().commit(users.values(), appended, sync);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+            if (currentUser == null
+                    || currentUser.getUserId().equals(sharedPreferences.getString(KEY_CURRENT_USER_ID, null))) {
+                return true;
+            }
+            SharedPreferences.Editor editor = sharedPreferences.edit()
+                    .putString(KEY_CURRENT_USER_ID, currentUser.getUserId());
+            if (sync) {
+                return editor.commit();
+            }
+            editor.apply();
+            return true;
+        }
+
+        /**
+         * Add another unit's changes after this one's.
+         */
+        private void addAll(UnitOfWork other) {
+            users.putAll(other.users);
+            for (Map.Entry<String, List<Transaction>> entry : other.appended.entrySet()) {
+                List<Transaction> list = appended.get(entry.getKey());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    appended.put(entry.getKey(), list);
+                }
+                list.addAll(entry.getValue());
+            }
+            if (other.currentUser != null) {
+                currentUser = other.currentUser;
+            }
+        }
+    }
+
+    /**
+     * A unit of work waiting in a group commit.
+     */
+    private static class GroupMember {
+        final UnitOfWork work;
+        final long requestedAt;
+        final Callback<Boolean> callback;
+        boolean committed;
+        final FutureTask<Boolean> result = new FutureTask<>(() -> committed);
+
+        GroupMember(UnitOfWork work, long requestedAt, Callback<Boolean> callback) {
+            this.work = work;
+            this.requestedAt = requestedAt;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Add a unit of work to the open group commit, queueing the group's write if it is the first.
+     * Members keep joining until that write starts, so everything requested while the
+     * I/O thread is busy shares one write and one fsync.
+     */
+    private Future<Boolean> joinGroup(UnitOfWork work, long requestedAt, Callback<Boolean> callback) {
+        GroupMember member = new GroupMember(work, requestedAt, callback);
+        synchronized (groupLock) {
+            if (openGroup == null) {
+                List<GroupMember> group = new ArrayList<>();
+                openGroup = group;
+                IO_EXECUTOR.execute(() -> commitGroup(group));
+            }
+            openGroup.add(member);
+        }
+        return member.result;
+    }
+
+    /**
+     * Write every member of a group commit as one unit of work and complete them all.
+     * The members are taken out of the list, so a group already written from the I/O
+     * thread is not written again when its queued write runs.
+     */
+    private void commitGroup(List<GroupMember> members) {
+        UnitOfWork batch = new UnitOfWork();
+        List<GroupMember> group;
+        synchronized (groupLock) {
+            if (openGroup == members) {
+                openGroup = null;
+            }
+            group = new ArrayList<>(members);
+            members.clear();
+            for (GroupMember member : group) {
+                batch.addAll(member.work);
+            }
+        }
+        if (group.isEmpty()) {
+            return;
+        }
+        boolean committed = batch.write(true);
+
+        long completedAt = System.nanoTime();
+        WriteLatencyStats stats = latencyStats.get(DurabilityMode.GROUP_COMMIT);
+        for (GroupMember member : group) {
+            stats.record(completedAt - member.requestedAt);
+            member.committed = committed;
+            member.result.run();
+            if (member.callback != null) {
+                mainHandler.post(() -> member.callback.onComplete(committed));
+            }
+        }
+    }
+
+    /**
+     * Check whether a user has been saved to the store.
      */
-    private JSONArray getUsersArray() throws JSONException {
-        String usersStr = sharedPreferences.getString(KEY_USERS, "[]");
-        return new JSONArray(usersStr);
+    boolean hasStoredUser(String userId) {
+        try {
+            return getStore().hasUser(userId);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     /**
-     * Convert User object to JSONObject.
+     * Load a user from the store, or from the legacy array if they have not been migrated yet.
      */
-    private JSONObject userToJson(User user) throws JSONException {
-        JSONObject json = new JSONObject();
-        json.put("userId", user.getUserId());
-        json.put("email", user.getEmail());
-        json.put("password", user.getPassword());
-        json.put("fullName", user.getFullName());
-        json.put("phoneNumber", user.getPhoneNumber());
-        json.put("accountNumber", user.getAccountNumber());
-        json.put("balance", user.getBalance());
-        json.put("language", user.getLanguage());
-        json.put("biometricEnabled", user.isBiometricEnabled());
-        
-        // Convert transactions
-        JSONArray transactionsArray = new JSONArray();
-        for (Transaction transaction : user.getTransactions()) {
-            transactionsArray.put(transactionToJson(transaction));
+    private User loadUser(String userId, boolean includeTransactions) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            User user = getStore().getUser(userId, includeTransactions);
+            if (user != null) {
+                return user;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        json.put("transactions", transactionsArray);
-        
-        return json;
+        return legacyMigration.isPending() ? legacyMigration.findById(userId) : null;
     }
 
     /**
-     * Convert JSONObject to User object.
+     * Get the storage backend, choosing one the first time this install needs it.
+     * Installs that already keep users in per-user preferences files stay on them;
+     * everything else uses SQLite.
      */
-    private User jsonToUser(JSONObject json) throws JSONException {
-        User user = new User();
-        user.setUserId(json.getString("userId"));
-        user.setEmail(json.getString("email"));
-        user.setPassword(json.getString("password"));
-        user.setFullName(json.getString("fullName"));
-        user.setPhoneNumber(json.getString("phoneNumber"));
-        user.setAccountNumber(json.getString("accountNumber"));
-        user.setBalance(json.getDouble("balance"));
-        user.setLanguage(json.optString("language", "en"));
-        user.setBiometricEnabled(json.optBoolean("biometricEnabled", false));
-        
-        // Convert transactions
-        JSONArray transactionsArray = json.optJSONArray("transactions");
-        if (transactionsArray != null) {
-            List<Transaction> transactions = new ArrayList<>();
-            for (int i = 0; i < transactionsArray.length(); i++) {
-                transactions.add(jsonToTransaction(transactionsArray.getJSONObject(i)));
+    private synchronized UserStore getStore() {
+        if (store == null) {
+            String backend = sharedPreferences.getString(KEY_STORAGE_BACKEND, null);
+            if (backend == null) {
+                backend = hasPrefsUsers() ? BACKEND_PREFS : BACKEND_SQLITE;
+                sharedPreferences.edit().putString(KEY_STORAGE_BACKEND, backend).commit();
+            }
+            store = BACKEND_PREFS.equals(backend)
+                    ? new PrefsUserStore(context, sharedPreferences)
+                    : new SqliteUserStore(context);
+        }
+        return store;
+    }
+
+    private boolean hasPrefsUsers() {
+        for (String key : sharedPreferences.getAll().keySet()) {
+            if (key.startsWith(PrefsUserStore.INDEX_EMAIL_PREFIX)) {
+                return true;
             }
-            user.setTransactions(transactions);
         }
-        
-        return user;
+        return false;
     }
 
     /**
-     * Convert Transaction object to JSONObject.
+     * Bring the data on disk up to {@link #SCHEMA_VERSION}.
+     * The legacy users array is converted in chunks, each queued as its own I/O task so
+     * that reads submitted in the meantime are not held up behind the whole migration.
      */
-    private JSONObject transactionToJson(Transaction transaction) throws JSONException {
-        JSONObject json = new JSONObject();
-        json.put("transactionId", transaction.getTransactionId());
-        json.put("type", transaction.getType());
-        json.put("amount", transaction.getAmount());
-        json.put("balanceAfter", transaction.getBalanceAfter());
-        json.put("date", transaction.getDate());
-        json.put("description", transaction.getDescription());
-        return json;
+    private void upgradeSchema() {
+        if (getSchemaVersion() >= SCHEMA_VERSION) {
+            return;
+        }
+        migrateLegacyCurrentUser();
+        if (legacyMigration.isPending()) {
+            scheduleLegacyMigration();
+        } else {
+            sharedPreferences.edit().putInt(KEY_SCHEMA_VERSION, SCHEMA_VERSION).commit();
+        }
+    }
+
+    private void scheduleLegacyMigration() {
+        submit(() -> {
+            if (legacyMigration.migrateChunk()) {
+                scheduleLegacyMigration();
+            }
+            return null;
+        }, null);
     }
 
     /**
-     * Convert JSONObject to Transaction object.
+     * Replace the legacy full copy of the current user with a userId pointer.
      */
-    private Transaction jsonToTransaction(JSONObject json) throws JSONException {
-        Transaction transaction = new Transaction();
-        transaction.setTransactionId(json.getString("transactionId"));
-        transaction.setType(json.getString("type"));
-        transaction.setAmount(json.getDouble("amount"));
-        transaction.setBalanceAfter(json.getDouble("balanceAfter"));
-        transaction.setDate(json.getString("date"));
-        transaction.setDescription(json.optString("description", ""));
-        return transaction;
+    private void migrateLegacyCurrentUser() {
+        String userJsonStr = sharedPreferences.getString(KEY_CURRENT_USER, null);
+        if (userJsonStr == null) {
+            return;
+        }
+        try {
+            User user = UserJsonCodec.readUser(userJsonStr, true);
+            // A stored user is at least as new as the copy, so only save the copy if there is none
+            User stored = legacyMigration.isPending() ? legacyMigration.findById(user.getUserId()) : null;
+            if (hasStoredUser(user.getUserId()) || saveUser(stored != null ? stored : user)) {
+                sharedPreferences.edit()
+                        .putString(KEY_CURRENT_USER_ID, user.getUserId())
+                        .remove(KEY_CURRENT_USER)
+                        .commit();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
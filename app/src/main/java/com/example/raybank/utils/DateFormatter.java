@@ -0,0 +1,57 @@
+package com.example.raybank.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats transaction timestamps for display.
+ * Timestamps are stored as epoch milliseconds and only turned into text here, with one
+ * cached SimpleDateFormat per thread since SimpleDateFormat is not thread-safe.
+ */
+public final class DateFormatter {
+    /** Pattern of displayed dates, and of the date strings stored by older versions. */
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private static final ThreadLocal<SimpleDateFormat> FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(PATTERN, Locale.getDefault());
+        }
+    };
+
+    private DateFormatter() {
+    }
+
+    /**
+     * Format epoch milliseconds as a local date and time, like "2024-01-31 13:45:00".
+     */
+    public static String format(long timestamp) {
+        return getFormat().format(new Date(timestamp));
+    }
+
+    /**
+     * Parse a date string stored by an older version into epoch milliseconds.
+     *
+     * @return The timestamp, or 0 if the date is missing or cannot be parsed
+     */
+    public static long parseLegacy(String date) {
+        if (date != null) {
+            try {
+                return getFormat().parse(date).getTime();
+            } catch (ParseException e) {
+                e.printStackTrace();
+            }
+        }
+        return 0;
+    }
+
+    private static SimpleDateFormat getFormat() {
+        SimpleDateFormat format = FORMAT.get();
+        // Follow the device if its time zone changed since the format was cached
+        format.setTimeZone(TimeZone.getDefault());
+        return format;
+    }
+}
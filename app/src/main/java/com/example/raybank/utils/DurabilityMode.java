@@ -0,0 +1,25 @@
+package com.example.raybank.utils;
+
+/**
+ * How long a {@link DataManager.UnitOfWork} waits for its changes to reach the disk,
+ * trading write latency for what survives a crash or power cut.
+ */
+public enum DurabilityMode {
+    /**
+     * Written without an fsync. The latest commits can be lost in a power cut,
+     * but never half-applied. Suits profile and settings changes.
+     */
+    ASYNC,
+
+    /**
+     * Written and fsynced on its own before the commit completes.
+     */
+    SYNC,
+
+    /**
+     * Joins the other group commits queued on the I/O thread, and all of them are written
+     * and fsynced together before any completes. As durable as {@link #SYNC}, with the
+     * fsync cost shared by every operation in the group. Suits money operations.
+     */
+    GROUP_COMMIT
+}
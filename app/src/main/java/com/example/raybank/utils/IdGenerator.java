@@ -0,0 +1,196 @@
+package com.example.raybank.utils;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique ids for transactions, users and account numbers.
+ *
+ * Ids are Snowflake-style longs: 41 bits of milliseconds since {@link #EPOCH}, 10 bits of
+ * node id and a 12-bit sequence within the millisecond. The time and sequence are advanced
+ * together with one compare-and-set, so concurrent callers never block and never get the
+ * same value. A burst of more than 4096 ids in a millisecond, or a clock that moves back,
+ * borrows from the following milliseconds instead of waiting or repeating.
+ *
+ * Account numbers use the same layout with seconds instead of milliseconds: 4096 numbers a
+ * second per node before a burst borrows the next second. They are "ACC", the value as
+ * sixteen digits and a Luhn check digit, so a mistyped number can be rejected before it is
+ * looked up.
+ */
+public class IdGenerator {
+    /** Start of the id clock, 2024-01-01T00:00:00Z. */
+    public static final long EPOCH = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final String TRANSACTION_PREFIX = "TXN";
+    private static final String USER_PREFIX = "USER";
+    private static final String REQUEST_PREFIX = "REQ";
+    private static final String ACCOUNT_PREFIX = "ACC";
+    // Digits before the check digit; 31 bits of seconds and 22 of node and sequence fit in 16
+    private static final int ACCOUNT_BODY_DIGITS = 16;
+    // Older numbers: "ACC" and the clock in milliseconds modulo 10^9, or the demo accounts' digits
+    private static final int LEGACY_ACCOUNT_DIGITS = 9;
+    private static final int DEMO_ACCOUNT_DIGITS = 10;
+
+    private final long node;
+    // Milliseconds since EPOCH << SEQUENCE_BITS | sequence of the last id handed out
+    private final AtomicLong lastId = new AtomicLong();
+    // Seconds since EPOCH << SEQUENCE_BITS | sequence of the last account number handed out
+    private final AtomicLong lastAccount = new AtomicLong();
+
+    /**
+     * Create a generator for the given node.
+     *
+     * @param node Node id, 0 to 1023; generators with different nodes never share an id
+     */
+    public IdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    /**
+     * Get the process-wide generator. Its node is picked at random, so ids from
+     * different devices are unlikely to collide if histories are ever merged.
+     */
+    public static IdGenerator getInstance() {
+        // Created lazily by class initialization, so getting it takes no lock
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Get the next id. Ids from one generator strictly increase.
+     */
+    public long nextId() {
+        return next(lastId, System.currentTimeMillis() - EPOCH);
+    }
+
+    /**
+     * Get a new transaction id, such as "TXN1234567890123456".
+     */
+    public String nextTransactionId() {
+        return TRANSACTION_PREFIX + nextId();
+    }
+
+    /**
+     * Get a new user id, such as "USER1234567890123456".
+     */
+    public String nextUserId() {
+        return USER_PREFIX + nextId();
+    }
+
+    /**
+     * Get a new idempotency key for a money request, such as "REQ1234567890123456".
+     */
+    public String nextRequestKey() {
+        return REQUEST_PREFIX + nextId();
+    }
+
+    /**
+     * Get a new account number, such as "ACC00123456789012347".
+     * Numbers from generators with different nodes never collide, and a burst of numbers
+     * only runs ahead of the clock by a second for every 4096 of them.
+     */
+    public String nextAccountNumber() {
+        long body = next(lastAccount, (System.currentTimeMillis() - EPOCH) / 1000);
+        StringBuilder digits = new StringBuilder(ACCOUNT_BODY_DIGITS + 1);
+        String value = Long.toString(body);
+        for (int i = value.length(); i < ACCOUNT_BODY_DIGITS; i++) {
+            digits.append('0');
+        }
+        digits.append(value);
+        digits.append(luhnCheckDigit(digits));
+        return ACCOUNT_PREFIX + digits;
+    }
+
+    /**
+     * Check that an account number is "ACC" followed by seventeen digits with a valid check
+     * digit. Account numbers in older formats are not valid; see {@link #isLegacyAccountNumber(String)}.
+     */
+    public static boolean isValidAccountNumber(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != ACCOUNT_PREFIX.length() + ACCOUNT_BODY_DIGITS + 1
+                || !accountNumber.startsWith(ACCOUNT_PREFIX)) {
+            return false;
+        }
+        String digits = accountNumber.substring(ACCOUNT_PREFIX.length());
+        return isDigits(digits)
+                && luhnCheckDigit(digits.substring(0, ACCOUNT_BODY_DIGITS)) == digits.charAt(ACCOUNT_BODY_DIGITS);
+    }
+
+    /**
+     * Check that an account number has a format given out before check digits: "ACC" followed
+     * by one to nine digits, or the ten digits of the demo accounts. These carry no check digit,
+     * so only their shape can be checked.
+     */
+    public static boolean isLegacyAccountNumber(String accountNumber) {
+        if (accountNumber == null) {
+            return false;
+        }
+        if (accountNumber.startsWith(ACCOUNT_PREFIX)) {
+            String digits = accountNumber.substring(ACCOUNT_PREFIX.length());
+            return !digits.isEmpty() && digits.length() <= LEGACY_ACCOUNT_DIGITS && isDigits(digits);
+        }
+        return accountNumber.length() == DEMO_ACCOUNT_DIGITS && isDigits(accountNumber);
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advance a clock and sequence held as time << SEQUENCE_BITS | sequence, and get the
+     * value for it with this generator's node between the time and the sequence.
+     *
+     * @param now Current time in the clock's unit since {@link #EPOCH}
+     */
+    private long next(AtomicLong last, long now) {
+        long current;
+        long next;
+        do {
+            current = last.get();
+            // A new tick restarts the sequence; otherwise the sequence is bumped, and
+            // its overflow carries into the time bits, borrowing the next tick
+            next = now > current >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : current + 1;
+        } while (!last.compareAndSet(current, next));
+
+        return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                | node << SEQUENCE_BITS
+                | (next & SEQUENCE_MASK);
+    }
+
+    private static final class Holder {
+        static final IdGenerator INSTANCE = new IdGenerator(new SecureRandom().nextInt((int) MAX_NODE + 1));
+    }
+
+    /**
+     * Compute the Luhn check digit to append to the given digits.
+     */
+    private static char luhnCheckDigit(CharSequence digits) {
+        int sum = 0;
+        // Every second digit from the right of the payload is doubled
+        boolean doubled = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+}
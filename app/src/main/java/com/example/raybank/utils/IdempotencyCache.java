@@ -0,0 +1,100 @@
+package com.example.raybank.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of recent requests by idempotency key, so a repeated request gets the original
+ * result back instead of running again.
+ *
+ * Holds at most a fixed number of keys, dropping the least recently used, and forgets a
+ * key once it is older than the time to live. Lookups and inserts are O(1).
+ * Methods are synchronized.
+ *
+ * @param <V> Type of the results
+ */
+public class IdempotencyCache<V> {
+    /** Keys held by default. */
+    public static final int DEFAULT_CAPACITY = 256;
+    /** How long a key is remembered by default: ten minutes. */
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+
+    private final int capacity;
+    private final long ttlNanos;
+    // Access-ordered, so the eldest entry is the least recently used key
+    private final Map<String, Entry<V>> entries;
+
+    public IdempotencyCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param capacity  Most keys held at once
+     * @param ttlMillis How long a key is remembered after its result is stored
+     */
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive");
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1000000L;
+        this.entries = new LinkedHashMap<String, Entry<V>>(capacity + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > IdempotencyCache.this.capacity || eldest.getValue().isExpired(System.nanoTime());
+            }
+        };
+    }
+
+    /**
+     * Get the result stored for a key.
+     *
+     * @return The result, or null if the key is unknown or has expired
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Store the result of a request, replacing any result held for the key.
+     */
+    public synchronized void put(String key, V result) {
+        entries.put(key, new Entry<>(result, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Get the number of keys held, including any that have expired but not been dropped yet.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forget every key.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry<V> {
+        private final V result;
+        private final long expiresAt;
+
+        Entry(V result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A user's transaction history backed by a {@link TransactionReader}.
+ *
+ * Stored transactions are only decoded when they are indexed or iterated, a page at a
+ * time, and the most recently used pages are kept in memory. Loading a user with this
+ * list therefore costs the same however long their history is. Transactions added to
+ * the list are kept in memory after the stored ones; they are persisted separately.
+ */
+public class LazyTransactionList extends AbstractList<Transaction> {
+    /** Transactions decoded and cached together. */
+    static final int PAGE_SIZE = 64;
+    /** Pages kept in memory. */
+    static final int CACHED_PAGES = 4;
+
+    private final TransactionReader reader;
+    private final List<Transaction> added = new ArrayList<>();
+    // Access-ordered, so the eldest entry is the least recently used page
+    private final Map<Integer, List<Transaction>> pages =
+            new LinkedHashMap<Integer, List<Transaction>>(CACHED_PAGES + 1, 1f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+                    return size() > CACHED_PAGES;
+                }
+            };
+
+    /**
+     * @param reader Reader over the stored transactions; its size must not change
+     */
+    public LazyTransactionList(TransactionReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public synchronized Transaction get(int index) {
+        int stored = reader.size();
+        if (index >= stored) {
+            return added.get(index - stored);
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int pageIndex = index / PAGE_SIZE;
+        List<Transaction> page = pages.get(pageIndex);
+        if (page == null) {
+            int start = pageIndex * PAGE_SIZE;
+            int end = Math.min(stored, start + PAGE_SIZE);
+            page = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                page.add(reader.get(i));
+            }
+            pages.put(pageIndex, page);
+        }
+        return page.get(index % PAGE_SIZE);
+    }
+
+    @Override
+    public synchronized int size() {
+        return reader.size() + added.size();
+    }
+
+    /**
+     * Only appending is supported.
+     */
+    @Override
+    public synchronized void add(int index, Transaction transaction) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Transactions can only be appended");
+        }
+        added.add(transaction);
+        modCount++;
+    }
+}
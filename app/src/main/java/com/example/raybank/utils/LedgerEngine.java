@@ -0,0 +1,285 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.model.User;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves money between accounts in memory, debiting the sender and crediting the
+ * recipient as one step.
+ *
+ * Recipients are resolved through an index from account number to the one {@link User}
+ * instance for that account, filled from an {@link AccountResolver} on first use.
+ * Balances are guarded by a fixed set of striped locks: a transfer takes the stripes of
+ * both accounts in index order, so transfers between disjoint pairs of accounts run in
+ * parallel and two transfers in opposite directions can never deadlock.
+ *
+ * Other changes to a registered user's balance or history must not run at the same time
+ * as a transfer involving them. Persisting the changed users is left to the caller.
+ *
+ * A transfer may carry an idempotency key. Successful transfers are remembered by key in
+ * a bounded {@link IdempotencyCache}, and a repeat of the key, such as a double tap or a
+ * retried request, gets the original result back without moving any money.
+ */
+public class LedgerEngine {
+    // Power of two, so a stripe is picked by masking the hash
+    private static final int STRIPES = 64;
+
+    /**
+     * Outcome of a transfer.
+     */
+    public enum Status {
+        SUCCESS,
+        /** The amount was not positive, or would overflow the recipient's balance. */
+        INVALID_AMOUNT,
+        /** No account has the recipient's account number. */
+        UNKNOWN_RECIPIENT,
+        /** The sender and recipient are the same account. */
+        SAME_ACCOUNT,
+        /** The sender's balance is below the amount. */
+        INSUFFICIENT_FUNDS
+    }
+
+    /**
+     * Looks up accounts that are not in the index yet.
+     */
+    public interface AccountResolver {
+        /**
+         * Find the user holding an account number.
+         *
+         * @return The user, or null if there is none
+         */
+        User resolve(String accountNumber);
+    }
+
+    /**
+     * Result of a transfer, with the transactions recorded on both sides when it succeeded.
+     */
+    public static class Transfer {
+        private final Status status;
+        private final User sender;
+        private final User recipient;
+        private final Transaction debit;
+        private final Transaction credit;
+        private final boolean duplicate;
+
+        Transfer(Status status, User sender, User recipient, Transaction debit, Transaction credit) {
+            this(status, sender, recipient, debit, credit, false);
+        }
+
+        private Transfer(Status status, User sender, User recipient, Transaction debit, Transaction credit,
+                boolean duplicate) {
+            this.status = status;
+            this.sender = sender;
+            this.recipient = recipient;
+            this.debit = debit;
+            this.credit = credit;
+            this.duplicate = duplicate;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isSuccessful() {
+            return status == Status.SUCCESS;
+        }
+
+        public User getSender() {
+            return sender;
+        }
+
+        /**
+         * Get the recipient, or null if they could not be resolved.
+         */
+        public User getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * Get the transaction added to the sender's history, or null if the transfer failed.
+         */
+        public Transaction getDebit() {
+            return debit;
+        }
+
+        /**
+         * Get the transaction added to the recipient's history, or null if the transfer failed.
+         */
+        public Transaction getCredit() {
+            return credit;
+        }
+
+        /**
+         * Whether this is the remembered result of an earlier transfer with the same key,
+         * in which case nothing was changed this time.
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        private Transfer asDuplicate() {
+            return new Transfer(status, sender, recipient, debit, credit, true);
+        }
+    }
+
+    private final Object[] locks = new Object[STRIPES];
+    private final ConcurrentHashMap<String, User> accounts = new ConcurrentHashMap<>();
+    private final AccountResolver resolver;
+    private final IdempotencyCache<Transfer> completed = new IdempotencyCache<>();
+
+    /**
+     * @param resolver Used to find accounts missing from the index, may be null
+     */
+    public LedgerEngine(AccountResolver resolver) {
+        this.resolver = resolver;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Add a user to the account index, replacing any instance held for their account number.
+     */
+    public void register(User user) {
+        if (user.getAccountNumber() != null) {
+            accounts.put(user.getAccountNumber(), user);
+        }
+    }
+
+    /**
+     * Forget every indexed account and idempotency key, for example when the session ends.
+     */
+    public void clear() {
+        accounts.clear();
+        completed.clear();
+    }
+
+    /**
+     * Find the user holding an account number, resolving and indexing them on first use.
+     * The resolver may do I/O, so call this off the main thread for unindexed accounts.
+     *
+     * @return The indexed user, or null if there is none
+     */
+    public User findByAccountNumber(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        User user = accounts.get(accountNumber);
+        if (user == null && resolver != null) {
+            user = resolver.resolve(accountNumber);
+            if (user != null) {
+                // Another thread may have resolved the same account meanwhile
+                User existing = accounts.putIfAbsent(accountNumber, user);
+                if (existing != null) {
+                    user = existing;
+                }
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Move money from one account to another.
+     * On success both balances have changed and each user has the matching transaction
+     * added to their history, all while both accounts' stripes are held.
+     *
+     * @param sender           The paying user
+     * @param recipientAccount The account number to credit
+     * @param amount           Amount in sen
+     * @param sentNote         Description of the sender's transaction
+     * @param receivedNote     Description of the recipient's transaction
+     */
+    public Transfer transfer(User sender, String recipientAccount, long amount, String sentNote,
+            String receivedNote) {
+        return transfer(null, sender, recipientAccount, amount, sentNote, receivedNote);
+    }
+
+    /**
+     * Move money from one account to another at most once per idempotency key.
+     * If a transfer with the key already succeeded, its result is returned again, marked
+     * as a duplicate, and no balance or history is touched. Failed transfers change
+     * nothing and are not remembered, so they can be retried with the same key.
+     * A key must only ever be used by one sender.
+     *
+     * @param requestKey       Key identifying the request, or null to always transfer
+     * @param sender           The paying user
+     * @param recipientAccount The account number to credit
+     * @param amount           Amount in sen
+     * @param sentNote         Description of the sender's transaction
+     * @param receivedNote     Description of the recipient's transaction
+     */
+    public Transfer transfer(String requestKey, User sender, String recipientAccount, long amount,
+            String sentNote, String receivedNote) {
+        Transfer previous = findCompleted(requestKey);
+        if (previous != null) {
+            return previous;
+        }
+        if (amount <= 0) {
+            return new Transfer(Status.INVALID_AMOUNT, sender, null, null, null);
+        }
+        if (recipientAccount == null || recipientAccount.equals(sender.getAccountNumber())) {
+            return new Transfer(Status.SAME_ACCOUNT, sender, null, null, null);
+        }
+        User recipient = findByAccountNumber(recipientAccount);
+        if (recipient == null) {
+            return new Transfer(Status.UNKNOWN_RECIPIENT, sender, null, null, null);
+        }
+        if (recipient.getUserId().equals(sender.getUserId())) {
+            return new Transfer(Status.SAME_ACCOUNT, sender, recipient, null, null);
+        }
+
+        int senderStripe = stripeOf(sender);
+        int recipientStripe = stripeOf(recipient);
+        // Always lower stripe first; when both share a stripe the nested lock is reentrant
+        Object first = locks[Math.min(senderStripe, recipientStripe)];
+        Object second = locks[Math.max(senderStripe, recipientStripe)];
+        synchronized (first) {
+            synchronized (second) {
+                // A duplicate running alongside has the same sender, so it held this stripe
+                previous = findCompleted(requestKey);
+                if (previous != null) {
+                    return previous;
+                }
+                if (sender.getBalance() < amount) {
+                    return new Transfer(Status.INSUFFICIENT_FUNDS, sender, recipient, null, null);
+                }
+                long senderBalance = Money.subtract(sender.getBalance(), amount);
+                long recipientBalance;
+                try {
+                    recipientBalance = Money.add(recipient.getBalance(), amount);
+                } catch (ArithmeticException e) {
+                    return new Transfer(Status.INVALID_AMOUNT, sender, recipient, null, null);
+                }
+
+                Transaction debit = new Transaction(TransactionType.TRANSFER, amount, senderBalance, sentNote);
+                Transaction credit = new Transaction(TransactionType.TRANSFER_IN, amount, recipientBalance,
+                        receivedNote);
+                sender.setBalance(senderBalance);
+                sender.addTransaction(debit);
+                recipient.setBalance(recipientBalance);
+                recipient.addTransaction(credit);
+                Transfer result = new Transfer(Status.SUCCESS, sender, recipient, debit, credit);
+                if (requestKey != null) {
+                    completed.put(requestKey, result);
+                }
+                return result;
+            }
+        }
+    }
+
+    private Transfer findCompleted(String requestKey) {
+        if (requestKey == null) {
+            return null;
+        }
+        Transfer previous = completed.get(requestKey);
+        return previous != null ? previous.asDuplicate() : null;
+    }
+
+    private static int stripeOf(User user) {
+        int hash = user.getUserId().hashCode();
+        // Spread the high bits, as HashMap does, before masking
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
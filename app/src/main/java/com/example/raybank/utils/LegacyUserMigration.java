@@ -0,0 +1,114 @@
+package com.example.raybank.utils;
+
+import android.content.SharedPreferences;
+import com.example.raybank.model.User;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Migration of the legacy "users" JSON array into per-user entries.
+ *
+ * Users are converted a chunk at a time, and the index of the next unconverted user
+ * is committed after every chunk, so a process killed partway through resumes where
+ * it stopped. Until the last chunk is done, users that have not been converted yet
+ * are still served straight from the legacy array.
+ */
+class LegacyUserMigration {
+    static final String KEY_USERS = "users";
+    static final int CHUNK_SIZE = 20;
+
+    private static final String KEY_CURSOR = "users_migration_cursor";
+    private static final String FIELD_USER_ID = "userId";
+    private static final String FIELD_EMAIL = "email";
+    private static final String FIELD_ACCOUNT_NUMBER = "accountNumber";
+
+    private final SharedPreferences preferences;
+    private final DataManager dataManager;
+
+    LegacyUserMigration(SharedPreferences preferences, DataManager dataManager) {
+        this.preferences = preferences;
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Check whether any legacy users are still waiting to be converted.
+     */
+    boolean isPending() {
+        return preferences.contains(KEY_USERS);
+    }
+
+    /**
+     * Convert the next chunk of legacy users.
+     * Finishing the last chunk removes the legacy array and records the new schema version
+     * in the same commit.
+     *
+     * @return true if more chunks remain, false once done or if the migration has to stop
+     */
+    boolean migrateChunk() {
+        String usersJson = preferences.getString(KEY_USERS, null);
+        if (usersJson == null) {
+            return false;
+        }
+        int cursor = preferences.getInt(KEY_CURSOR, 0);
+        try {
+            List<User> users = UserJsonCodec.readUsers(usersJson, cursor, CHUNK_SIZE);
+            for (User user : users) {
+                // A user saved since the migration started is newer than the legacy copy
+                if (!dataManager.hasStoredUser(user.getUserId()) && !dataManager.saveUser(user)) {
+                    // Leave the cursor where it is and retry on the next launch
+                    return false;
+                }
+            }
+            if (users.size() < CHUNK_SIZE) {
+                preferences.edit()
+                        .remove(KEY_USERS)
+                        .remove(KEY_CURSOR)
+                        .putInt(DataManager.KEY_SCHEMA_VERSION, DataManager.SCHEMA_VERSION)
+                        .commit();
+                return false;
+            }
+            return preferences.edit().putInt(KEY_CURSOR, cursor + users.size()).commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Find a user that has not been converted yet by userId.
+     */
+    User findById(String userId) {
+        return find(FIELD_USER_ID, userId);
+    }
+
+    /**
+     * Find a user that has not been converted yet by email.
+     */
+    User findByEmail(String email) {
+        return find(FIELD_EMAIL, email);
+    }
+
+    /**
+     * Find a user that has not been converted yet by account number.
+     */
+    User findByAccountNumber(String accountNumber) {
+        return find(FIELD_ACCOUNT_NUMBER, accountNumber);
+    }
+
+    private User find(String field, String value) {
+        String usersJson = preferences.getString(KEY_USERS, null);
+        if (usersJson == null) {
+            return null;
+        }
+        try {
+            // Users before the cursor are already served from their own entries
+            int index = UserJsonCodec.findUser(usersJson, preferences.getInt(KEY_CURSOR, 0), field, value);
+            if (index >= 0) {
+                return UserJsonCodec.readUsers(usersJson, index, 1).get(0);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
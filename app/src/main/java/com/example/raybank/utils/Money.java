@@ -0,0 +1,134 @@
+package com.example.raybank.utils;
+
+/**
+ * Money as a primitive {@code long} count of sen (1/100 ringgit).
+ * Arithmetic is exact and overflow-checked, and nothing here allocates except
+ * {@link #toPlainString(long)}.
+ */
+public final class Money {
+    /** Sen in one ringgit. */
+    public static final long SEN_PER_RINGGIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Parse an amount in ringgit such as "12", "12.5" or "-12.50" into sen.
+     * Only digits, an optional leading minus and at most two decimals are accepted;
+     * no grouping separators, exponents or whitespace.
+     *
+     * @throws NumberFormatException if the text is not such an amount or does not fit in a long
+     */
+    public static long parse(String text) {
+        int length = text.length();
+        int index = 0;
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        if (negative) {
+            index++;
+        }
+
+        // Accumulated as a negative number, which has the larger range
+        long sen = 0;
+        int integerDigits = 0;
+        for (; index < length && text.charAt(index) != '.'; index++) {
+            sen = appendDigit(sen, text, index);
+            integerDigits++;
+        }
+        if (integerDigits == 0) {
+            throw new NumberFormatException("Invalid amount: \"" + text + "\"");
+        }
+
+        int decimals = 0;
+        if (index < length) {
+            // Skip the point; it must be followed by one or two digits
+            index++;
+            if (index == length || length - index > 2) {
+                throw new NumberFormatException("Amount must have one or two decimals: \"" + text + "\"");
+            }
+            for (; index < length; index++) {
+                sen = appendDigit(sen, text, index);
+                decimals++;
+            }
+        }
+        for (; decimals < 2; decimals++) {
+            sen = appendDigit(sen, 0, text);
+        }
+
+        if (!negative) {
+            if (sen == Long.MIN_VALUE) {
+                throw new NumberFormatException("Amount out of range: \"" + text + "\"");
+            }
+            sen = -sen;
+        }
+        return sen;
+    }
+
+    private static long appendDigit(long sen, String text, int index) {
+        int digit = text.charAt(index) - '0';
+        if (digit < 0 || digit > 9) {
+            throw new NumberFormatException("Invalid amount: \"" + text + "\"");
+        }
+        return appendDigit(sen, digit, text);
+    }
+
+    private static long appendDigit(long sen, int digit, String text) {
+        if (sen < (Long.MIN_VALUE + digit) / 10) {
+            throw new NumberFormatException("Amount out of range: \"" + text + "\"");
+        }
+        return sen * 10 - digit;
+    }
+
+    /**
+     * Add two amounts.
+     *
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long add(long a, long b) {
+        long result = a + b;
+        // Overflow only if both operands have the opposite sign of the result
+        if (((a ^ result) & (b ^ result)) < 0) {
+            throw new ArithmeticException("Amount overflow");
+        }
+        return result;
+    }
+
+    /**
+     * Subtract one amount from another.
+     *
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long subtract(long a, long b) {
+        long result = a - b;
+        // Overflow only if the operands have different signs and the result's sign differs from a
+        if (((a ^ b) & (a ^ result)) < 0) {
+            throw new ArithmeticException("Amount overflow");
+        }
+        return result;
+    }
+
+    /**
+     * Convert an amount stored as a double number of ringgit by older versions.
+     */
+    public static long fromRinggit(double ringgit) {
+        return Math.round(ringgit * SEN_PER_RINGGIT);
+    }
+
+    /**
+     * Format an amount as ringgit with two decimals and no grouping, such as "-12.05".
+     * The inverse of {@link #parse(String)}.
+     */
+    public static String toPlainString(long sen) {
+        StringBuilder builder = new StringBuilder(24);
+        if (sen < 0) {
+            builder.append('-');
+        }
+        // Divided before taking the absolute value, so Long.MIN_VALUE needs no special case
+        long ringgit = Math.abs(sen / SEN_PER_RINGGIT);
+        int cents = (int) Math.abs(sen % SEN_PER_RINGGIT);
+        builder.append(ringgit).append('.');
+        if (cents < 10) {
+            builder.append('0');
+        }
+        return builder.append(cents).toString();
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.raybank.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.User;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link UserStore} keeping each user's header in its own {@link ChecksummedFile} and their
+ * transactions in a {@link TransactionLedger}.
+ *
+ * A user's header is committed after their ledger records, together with the number
+ * of records it covers. That header commit is the commit point; ledger records after
+ * it are ignored on read and overwritten on the next append. Email and account number
+ * indexes pointing at each user live in the main preferences file.
+ *
+ * Headers written before the checksummed files existed are still read from the user's
+ * preferences file, and move to the header file the next time the user is committed.
+ *
+ * The header also carries the latest {@link AccountSnapshot}. Each time a new one is
+ * committed, the ledger rows it covers are sealed into the ledger's archive segment.
+ */
+public class PrefsUserStore implements UserStore {
+    private static final String USER_PREFS_PREFIX = "BankAppUser_";
+    private static final String HEADER_DIR = "users";
+    private static final String KEY_USER = "user";
+    static final String INDEX_EMAIL_PREFIX = "email:";
+    private static final String INDEX_ACCOUNT_PREFIX = "account:";
+
+    private final Context context;
+    private final SharedPreferences indexPreferences;
+    private final TransactionLedger ledger;
+    private final File headerDir;
+    // Committed ledger record count per userId, so commits do not re-read the header
+    private final Map<String, Integer> committedLedgerSizes = new ConcurrentHashMap<>();
+    private final Map<String, AccountSnapshot> committedSnapshots = new ConcurrentHashMap<>();
+
+    /**
+     * @param indexPreferences Preferences file holding the email and account number indexes
+     */
+    public PrefsUserStore(Context context, SharedPreferences indexPreferences) {
+        this.context = context;
+        this.indexPreferences = indexPreferences;
+        this.ledger = new TransactionLedger(context.getFilesDir());
+        this.headerDir = new File(context.getFilesDir(), HEADER_DIR);
+    }
+
+    @Override
+    public User getUser(String userId, boolean includeTransactions) throws IOException {
+        String userJsonStr = readHeaderJson(userId);
+        return userJsonStr != null ? decodeUser(userJsonStr, includeTransactions) : null;
+    }
+
+    @Override
+    public User getUserByEmail(String email) throws IOException {
+        String userId = indexPreferences.getString(INDEX_EMAIL_PREFIX + email, null);
+        User user = userId != null ? getUser(userId, true) : null;
+        // The index is not cleaned up when an email changes, so confirm it still matches
+        return user != null && email.equals(user.getEmail()) ? user : null;
+    }
+
+    @Override
+    public User getUserByAccountNumber(String accountNumber) throws IOException {
+        String userId = indexPreferences.getString(INDEX_ACCOUNT_PREFIX + accountNumber, null);
+        User user = userId != null ? getUser(userId, true) : null;
+        return user != null && accountNumber.equals(user.getAccountNumber()) ? user : null;
+    }
+
+    @Override
+    public boolean hasUser(String userId) {
+        return getHeaderFile(userId).exists() || getUserPreferences(userId).contains(KEY_USER);
+    }
+
+    /**
+     * With sync, each touched ledger and header file is fsynced once however many
+     * transactions the commit carries.
+     */
+    @Override
+    public void commit(Collection<User> users, Map<String, List<Transaction>> appended, boolean sync)
+            throws IOException {
+        for (User user : users) {
+            commitUser(user, appended.get(user.getUserId()), sync);
+        }
+        if (!commitIndexes(users)) {
+            throw new IOException("Could not commit user indexes");
+        }
+    }
+
+    @Override
+    public AccountSnapshot getSnapshot(String userId) throws IOException {
+        AccountSnapshot snapshot = committedSnapshots.get(userId);
+        if (snapshot == null) {
+            String userJsonStr = readHeaderJson(userId);
+            snapshot = userJsonStr != null ? UserJsonCodec.readHeader(userJsonStr).snapshot : null;
+            if (snapshot != null) {
+                committedSnapshots.put(userId, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public List<Transaction> getTransactionsSince(String userId, long sequence) throws IOException {
+        TransactionLedger.Reader reader = ledger.open(userId, getCommittedLedgerSize(userId));
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = (int) sequence; i < reader.size(); i++) {
+            transactions.add(reader.get(i));
+        }
+        return transactions;
+    }
+
+    /**
+     * Cursors are ledger row numbers. Users that have not been saved since the ledger was
+     * introduced are seeded first.
+     */
+    @Override
+    public TransactionPage getTransactions(String userId, long beforeCursor, int limit) throws IOException {
+        if (!ledger.exists(userId)) {
+            User user = getUser(userId, true);
+            if (user == null) {
+                return new TransactionPage(new TransactionLog(), TransactionPage.END);
+            }
+            commit(Collections.singletonList(user), Collections.<String, List<Transaction>>emptyMap(), true);
+        }
+        TransactionLedger.Reader reader = ledger.open(userId, getCommittedLedgerSize(userId));
+        int end = (int) Math.min(beforeCursor, reader.size());
+        int start = Math.max(0, end - limit);
+        TransactionLog transactions = new TransactionLog();
+        for (int i = end - 1; i >= start; i--) {
+            reader.appendTo(i, transactions);
+        }
+        return new TransactionPage(transactions, start > 0 ? start : TransactionPage.END);
+    }
+
+    /**
+     * Users that have not been saved since the ledger was introduced are seeded first.
+     */
+    @Override
+    public TransactionReader openTransactions(User user) throws IOException {
+        String userId = user.getUserId();
+        if (!ledger.exists(userId)) {
+            commit(Collections.singletonList(user), Collections.<String, List<Transaction>>emptyMap(), true);
+        }
+        return ledger.open(userId, getCommittedLedgerSize(userId));
+    }
+
+    /**
+     * Append a user's new ledger records and commit the header that covers them.
+     */
+    private void commitUser(User user, List<Transaction> transactions, boolean sync) throws IOException {
+        String userId = user.getUserId();
+        int ledgerSize;
+        if (!ledger.exists(userId)) {
+            // First save of this user: seed the ledger with their whole history
+            ledgerSize = ledger.append(userId, user.getTransactions(), 0, sync);
+        } else if (transactions != null && !transactions.isEmpty()) {
+            ledgerSize = ledger.append(userId, transactions, getCommittedLedgerSize(userId), sync);
+        } else {
+            ledgerSize = getCommittedLedgerSize(userId);
+        }
+
+        AccountSnapshot snapshot = getSnapshot(userId);
+        boolean snapshotTaken = false;
+        if (ledgerSize >= 0
+                && (snapshot == null || ledgerSize - snapshot.getSequence() >= AccountSnapshot.INTERVAL)) {
+            snapshot = takeSnapshot(user, snapshot, ledgerSize);
+            snapshotTaken = true;
+        }
+
+        String userJson = UserJsonCodec.writeUser(user, ledgerSize, snapshot);
+        getHeaderFile(userId).write(userJson.getBytes(StandardCharsets.UTF_8), sync);
+        SharedPreferences legacyPreferences = getUserPreferences(userId);
+        if (legacyPreferences.contains(KEY_USER)) {
+            legacyPreferences.edit().remove(KEY_USER).apply();
+        }
+        committedLedgerSizes.put(userId, ledgerSize);
+        if (snapshot != null) {
+            committedSnapshots.put(userId, snapshot);
+        }
+
+        if (snapshotTaken) {
+            try {
+                ledger.archive(userId, ledgerSize);
+            } catch (IOException e) {
+                // The rows stay in the active segment and are archived with the next snapshot
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Fold the ledger rows after the previous snapshot into a new one covering {@code ledgerSize} rows.
+     */
+    private AccountSnapshot takeSnapshot(User user, AccountSnapshot previous, int ledgerSize) throws IOException {
+        TransactionLedger.Reader reader = ledger.open(user.getUserId(), ledgerSize);
+        AccountSnapshot start = previous;
+        if (start == null) {
+            // The first snapshot folds from the balance before the first transaction
+            start = new AccountSnapshot();
+            start.setBalance(AccountReplay.openingBalance(reader.size() > 0 ? reader.get(0) : null,
+                    user.getBalance()));
+        }
+        return AccountReplay.replay(start, reader);
+    }
+
+    /**
+     * Update index entries in one commit, if anything changed.
+     */
+    private boolean commitIndexes(Iterable<User> users) {
+        SharedPreferences.Editor editor = indexPreferences.edit();
+        boolean changed = false;
+        for (User user : users) {
+            changed |= putIfChanged(editor, INDEX_EMAIL_PREFIX + user.getEmail(), user.getUserId());
+            if (user.getAccountNumber() != null) {
+                changed |= putIfChanged(editor, INDEX_ACCOUNT_PREFIX + user.getAccountNumber(), user.getUserId());
+            }
+        }
+        return !changed || editor.commit();
+    }
+
+    private boolean putIfChanged(SharedPreferences.Editor editor, String key, String value) {
+        if (value.equals(indexPreferences.getString(key, null))) {
+            return false;
+        }
+        editor.putString(key, value);
+        return true;
+    }
+
+    /**
+     * Read a user's stored header JSON, from the header file or else the legacy preferences file.
+     *
+     * @return The JSON, or null if the user has not been stored
+     */
+    private String readHeaderJson(String userId) throws IOException {
+        byte[] data = getHeaderFile(userId).read();
+        if (data != null) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        return getUserPreferences(userId).getString(KEY_USER, null);
+    }
+
+    private ChecksummedFile getHeaderFile(String userId) {
+        return new ChecksummedFile(new File(headerDir, userId + ".user"));
+    }
+
+    /**
+     * Get the preferences file headers were kept in before the header files.
+     */
+    private SharedPreferences getUserPreferences(String userId) {
+        return context.getSharedPreferences(USER_PREFS_PREFIX + userId, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Get how many ledger records a user's stored header has committed.
+     *
+     * @return The committed count, or -1 if the header predates tracking it
+     */
+    private int getCommittedLedgerSize(String userId) throws IOException {
+        Integer cached = committedLedgerSizes.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        String userJsonStr = readHeaderJson(userId);
+        int ledgerSize = userJsonStr != null ? UserJsonCodec.readHeader(userJsonStr).ledgerSize : -1;
+        committedLedgerSizes.put(userId, ledgerSize);
+        return ledgerSize;
+    }
+
+    /**
+     * Decode a stored user, taking the history from their ledger.
+     * Users written before the ledger existed still carry their history embedded in
+     * the JSON, and it is always decoded for them so that the next save can seed the ledger.
+     */
+    private User decodeUser(String userJson, boolean includeTransactions) throws IOException {
+        UserJsonCodec.Header header = UserJsonCodec.readHeader(userJson);
+        User user = header.user;
+        if (!ledger.exists(user.getUserId())) {
+            return UserJsonCodec.readUser(userJson, true);
+        }
+        committedLedgerSizes.put(user.getUserId(), header.ledgerSize);
+        if (header.snapshot != null) {
+            committedSnapshots.put(user.getUserId(), header.snapshot);
+        }
+        if (includeTransactions) {
+            // Decoded from the mapped ledger only as they are read
+            user.setTransactions(new LazyTransactionList(ledger.open(user.getUserId(), header.ledgerSize)));
+        }
+        return user;
+    }
+}
@@ -0,0 +1,570 @@
+package com.example.raybank.utils;
+
+import android.content.Context;
+import com.example.raybank.BankAccount;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.User;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide repository for the logged-in session.
+ *
+ * Holds one canonical {@link User} instance per userId so every screen reads the
+ * same object instead of re-reading and re-parsing it from disk on each resume.
+ * Changes are marked dirty and written behind on the {@link DataManager} I/O thread,
+ * which runs every read after the writes queued before it.
+ *
+ * Each kind of write is committed with its own {@link DurabilityMode}: money movements
+ * are group committed, logins are fsynced on their own and profile edits are not fsynced.
+ *
+ * Transfers go through a {@link LedgerEngine} over the same canonical users, and the
+ * recipient's credit is committed in the same unit of work as the sender's debit.
+ *
+ * Money requests carry an idempotency key. Completed batches of deposits and withdrawals
+ * are kept by key in an {@link IdempotencyCache}, as the engine keeps transfers, so a
+ * repeated request is answered from memory and never recorded twice.
+ */
+public class SessionRepository {
+    /**
+     * Kinds of writes that can be given their own durability mode.
+     */
+    public enum Operation {
+        /** Recording transactions, together with the balance they leave. */
+        TRANSACTION,
+        /** Profile and settings changes without a transaction. */
+        PROFILE,
+        /** Starting a session. */
+        LOGIN
+    }
+
+    private static SessionRepository instance;
+
+    private final DataManager dataManager;
+    private final Map<String, User> identityMap = new HashMap<>();
+    private final List<Transaction> pendingTransactions = new ArrayList<>();
+    // Credits to other users from transfers, by userId, not written yet
+    private final Map<String, List<Transaction>> pendingCredits = new LinkedHashMap<>();
+    private final Map<String, User> creditedUsers = new HashMap<>();
+    // Told whether the commit that writes the pending changes succeeded
+    private final List<DataManager.Callback<Boolean>> pendingCallbacks = new ArrayList<>();
+    private final LedgerEngine ledger;
+    private final IdempotencyCache<BankAccount.Batch> completedBatches = new IdempotencyCache<>();
+    private final Map<Operation, DurabilityMode> durability = new EnumMap<>(Operation.class);
+
+    private User currentUser;
+    private boolean currentUserLoaded;
+    private boolean headerDirty;
+    private boolean flushQueued;
+    // Bumped whenever the current user's balance changes, so a read can tell it may be stale
+    private long balanceVersion;
+
+    private SessionRepository(Context context) {
+        dataManager = new DataManager(context);
+        ledger = new LedgerEngine(this::resolveAccount);
+        durability.put(Operation.TRANSACTION, DurabilityMode.GROUP_COMMIT);
+        durability.put(Operation.PROFILE, DurabilityMode.ASYNC);
+        durability.put(Operation.LOGIN, DurabilityMode.SYNC);
+    }
+
+    public static synchronized SessionRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SessionRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Get the DataManager backing this repository, for lookups that are not part of the session.
+     */
+    public DataManager getDataManager() {
+        return dataManager;
+    }
+
+    /**
+     * Choose how durable one kind of write must be before it completes.
+     * Compare modes with {@link DataManager#getLatencyStats(DurabilityMode)}.
+     */
+    public synchronized void setDurability(Operation operation, DurabilityMode mode) {
+        durability.put(operation, mode);
+    }
+
+    public synchronized DurabilityMode getDurability(Operation operation) {
+        return durability.get(operation);
+    }
+
+    /**
+     * Load the logged-in user on the I/O thread if it is not in memory yet.
+     *
+     * @param callback Receives the current user (or null) on the main thread
+     */
+    public void loadCurrentUser(DataManager.Callback<User> callback) {
+        synchronized (this) {
+            if (currentUserLoaded) {
+                callback.onComplete(currentUser);
+                return;
+            }
+        }
+        dataManager.submit(this::loadCurrentUserFromDisk, callback);
+    }
+
+    /**
+     * Get the logged-in user from memory. This never reads the disk, so it is safe on the
+     * main thread; screens get the user with {@link #loadCurrentUser(DataManager.Callback)}
+     * before they rely on it.
+     *
+     * @return The current user, or null if nobody is logged in or the user has not been loaded yet
+     */
+    public synchronized User getCurrentUser() {
+        return currentUser;
+    }
+
+    /**
+     * Read the logged-in user on the I/O thread. The disk is read outside the lock, so
+     * recording changes on the main thread never waits for it.
+     */
+    private User loadCurrentUserFromDisk() {
+        synchronized (this) {
+            if (currentUserLoaded) {
+                return currentUser;
+            }
+        }
+        User user = dataManager.getCurrentUser(false);
+        synchronized (this) {
+            // A login or logout while the disk was read wins over what was read
+            if (!currentUserLoaded) {
+                currentUser = user;
+                if (user != null) {
+                    identityMap.put(user.getUserId(), user);
+                    ledger.register(user);
+                }
+                currentUserLoaded = true;
+            }
+            return currentUser;
+        }
+    }
+
+    /**
+     * Find a user for the ledger's account index, reusing the in-memory instance if there is one.
+     * Runs on the I/O thread.
+     */
+    private User resolveAccount(String accountNumber) {
+        User user = dataManager.getUserByAccountNumber(accountNumber);
+        if (user == null) {
+            return null;
+        }
+        synchronized (this) {
+            User canonical = identityMap.get(user.getUserId());
+            if (canonical == null) {
+                identityMap.put(user.getUserId(), user);
+                canonical = user;
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * Start a session for the given user.
+     * The user is current in memory straight away; saving them and pointing the
+     * current user at them happens in one commit on the I/O thread.
+     *
+     * @param callback Receives true on the main thread if the session was persisted, may be null
+     */
+    public synchronized void login(User user, DataManager.Callback<Boolean> callback) {
+        // Changes the previous user made are queued under their name before the switch
+        commitPending();
+        User canonical = identityMap.get(user.getUserId());
+        currentUser = canonical != null ? canonical : user;
+        identityMap.put(currentUser.getUserId(), currentUser);
+        ledger.register(currentUser);
+        currentUserLoaded = true;
+        Map<User, List<Transaction>> histories = new IdentityHashMap<>();
+        dataManager.beginWork().setCurrentUser(copyOf(currentUser, histories))
+                .commitAsync(durability.get(Operation.LOGIN), afterCommit(histories, callback));
+    }
+
+    /**
+     * End the session. Changes recorded before the logout are still written first.
+     */
+    public synchronized void logout() {
+        // A flush already queued would find nobody logged in, so the changes are queued here
+        commitPending();
+        currentUser = null;
+        currentUserLoaded = true;
+        identityMap.clear();
+        ledger.clear();
+        completedBatches.clear();
+        dataManager.clearCurrentUserAsync(null);
+    }
+
+    /**
+     * Record a transaction the current user has just made.
+     * The user must already hold the new balance; the write happens in the background.
+     */
+    public synchronized void recordTransaction(Transaction transaction) {
+        pendingTransactions.add(transaction);
+        headerDirty = true;
+        balanceVersion++;
+        scheduleFlush();
+    }
+
+    /**
+     * Apply deposits and withdrawals to the current user's account as one change, and
+     * record the transactions to be written together in one commit. The user takes the
+     * balance the batch leaves, so the commit writes it with the transactions.
+     * A repeat of a request that succeeded gets the original result back and changes nothing;
+     * use {@link #findCompleted(String)} to tell a repeat apart.
+     *
+     * @param requestKey Idempotency key of the request, or null to always apply the batch
+     * @param account    The current user's account
+     * @param operations The operations, in the order to apply them
+     * @return The result, or null if nobody is logged in
+     */
+    public synchronized BankAccount.Batch applyBatch(String requestKey, BankAccount account,
+            List<BankAccount.Operation> operations) {
+        BankAccount.Batch previous = findCompleted(requestKey);
+        if (previous != null) {
+            return previous;
+        }
+        if (currentUser == null) {
+            return null;
+        }
+        BankAccount.Batch batch = account.applyBatch(operations);
+        if (batch.isSuccessful()) {
+            currentUser.setBalance(batch.getBalance());
+            for (Transaction transaction : batch.getTransactions()) {
+                currentUser.addTransaction(transaction);
+            }
+            recordTransactions(batch.getTransactions());
+            if (requestKey != null) {
+                completedBatches.put(requestKey, batch);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Find the result of a batch request that succeeded.
+     *
+     * @return The result, or null if the request has not completed or was too long ago
+     */
+    public BankAccount.Batch findCompleted(String requestKey) {
+        return requestKey != null ? completedBatches.get(requestKey) : null;
+    }
+
+    /**
+     * Transfer money from the current user to another account.
+     * The recipient is resolved on the I/O thread if they are not in memory yet; the
+     * transfer itself then runs on the main thread, like the session's other changes,
+     * and both sides are written in the background in one commit.
+     * A repeat of a request that succeeded gets the original result, marked as a duplicate,
+     * and is not recorded again.
+     *
+     * @param requestKey Idempotency key of the request
+     * @param callback   Receives the result on the main thread, or null if nobody is logged in
+     */
+    public void transfer(String requestKey, String recipientAccount, long amount, String sentNote,
+            String receivedNote, DataManager.Callback<LedgerEngine.Transfer> callback) {
+        dataManager.submit(() -> ledger.findByAccountNumber(recipientAccount), recipient -> {
+            User sender = getCurrentUser();
+            if (sender == null) {
+                callback.onComplete(null);
+                return;
+            }
+            LedgerEngine.Transfer result;
+            // Held so a flush never copies the users halfway through the transfer
+            synchronized (this) {
+                result = ledger.transfer(requestKey, sender, recipientAccount, amount, sentNote,
+                        receivedNote);
+                if (result.isSuccessful() && !result.isDuplicate()) {
+                    recordTransfer(result);
+                }
+            }
+            callback.onComplete(result);
+        });
+    }
+
+    private synchronized void recordTransfer(LedgerEngine.Transfer transfer) {
+        pendingTransactions.add(transfer.getDebit());
+        headerDirty = true;
+        balanceVersion++;
+        User recipient = transfer.getRecipient();
+        List<Transaction> credits = pendingCredits.get(recipient.getUserId());
+        if (credits == null) {
+            credits = new ArrayList<>();
+            pendingCredits.put(recipient.getUserId(), credits);
+        }
+        credits.add(transfer.getCredit());
+        creditedUsers.put(recipient.getUserId(), recipient);
+        scheduleFlush();
+    }
+
+    /**
+     * Record transactions the current user has just made, to be written together in one commit.
+     * The user must already hold the new balance; the write happens in the background.
+     */
+    public synchronized void recordTransactions(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        pendingTransactions.addAll(transactions);
+        headerDirty = true;
+        balanceVersion++;
+        scheduleFlush();
+    }
+
+    /**
+     * Mark the current user's profile or settings as changed so they are written in the background.
+     */
+    public synchronized void markDirty() {
+        headerDirty = true;
+        scheduleFlush();
+    }
+
+    /**
+     * Mark the current user's profile or settings as changed, and report once they are written.
+     *
+     * @param callback Receives true on the main thread once the change is written, or false
+     *                 if the write failed or nobody is logged in
+     */
+    public synchronized void markDirty(DataManager.Callback<Boolean> callback) {
+        if (currentUser == null) {
+            callback.onComplete(false);
+            return;
+        }
+        pendingCallbacks.add(callback);
+        markDirty();
+    }
+
+    /**
+     * Read a page of the current user's transactions on the I/O thread, after every pending write.
+     *
+     * @param callback Receives the page on the main thread, or null if it could not be read
+     */
+    public void loadTransactions(long beforeCursor, int limit, DataManager.Callback<TransactionPage> callback) {
+        User user = getCurrentUser();
+        if (user == null) {
+            callback.onComplete(null);
+            return;
+        }
+        dataManager.getTransactionsAsync(user.getUserId(), beforeCursor, limit, callback);
+    }
+
+    /**
+     * Get the current user's balance at a time on the I/O thread, after every pending write.
+     *
+     * @param timestamp Epoch milliseconds; transactions made at that time are included
+     * @param callback  Receives the balance in sen on the main thread, or null if it could not be read
+     */
+    public void loadBalanceAt(long timestamp, DataManager.Callback<Long> callback) {
+        User user = getCurrentUser();
+        if (user == null) {
+            callback.onComplete(null);
+            return;
+        }
+        dataManager.submit(() -> {
+            BalanceIndex index = dataManager.getBalanceIndex(user);
+            return index != null ? index.getBalanceAt(timestamp) : null;
+        }, callback);
+    }
+
+    /**
+     * Rebuild the current user's account on the I/O thread, after every pending write.
+     * The account is folded from the transactions, so a stored balance that drifted from it
+     * is corrected, unless the balance changed after the rebuild was asked for; the fold
+     * may then have missed that change.
+     *
+     * @param callback Receives the account on the main thread, or null if nobody is logged in
+     */
+    public void loadAccount(DataManager.Callback<BankAccount> callback) {
+        long version;
+        synchronized (this) {
+            version = balanceVersion;
+        }
+        User user = getCurrentUser();
+        if (user == null) {
+            callback.onComplete(null);
+            return;
+        }
+        dataManager.loadAccountAsync(user, account -> {
+            if (account != null) {
+                reconcile(user, account, version);
+            }
+            callback.onComplete(account);
+        });
+    }
+
+    private synchronized void reconcile(User user, BankAccount account, long version) {
+        if (user != currentUser || version != balanceVersion || user.getBalance() == account.getBalance()) {
+            return;
+        }
+        user.setBalance(account.getBalance());
+        markDirty();
+    }
+
+    private void scheduleFlush() {
+        // Changes made before a queued flush takes its snapshot are picked up by it
+        if (!flushQueued) {
+            flushQueued = true;
+            dataManager.submit(() -> {
+                flush();
+                return null;
+            }, null);
+        }
+    }
+
+    /**
+     * Write dirty state on the I/O thread.
+     * Everything recorded until the flush runs goes into one commit.
+     */
+    private void flush() {
+        DataManager.UnitOfWork work;
+        DataManager.Callback<Boolean> callback;
+        synchronized (this) {
+            flushQueued = false;
+            Map<User, List<Transaction>> histories = new IdentityHashMap<>();
+            work = takePendingWork(histories);
+            callback = afterCommit(histories, takeCallbacks());
+        }
+        // Committed outside the lock, so recording new changes never waits for the disk
+        if (work != null) {
+            work.commitAsync(durabilityOf(work), callback);
+        }
+    }
+
+    /**
+     * Queue the commit of the dirty state now, for example before the session changes hands.
+     * Queueing is quick, so this is safe to call from the main thread.
+     */
+    private synchronized void commitPending() {
+        Map<User, List<Transaction>> histories = new IdentityHashMap<>();
+        DataManager.UnitOfWork work = takePendingWork(histories);
+        if (work != null) {
+            work.commitAsync(durabilityOf(work), afterCommit(histories, takeCallbacks()));
+        }
+        // Nothing left over may be written under the next user's name
+        pendingTransactions.clear();
+        headerDirty = false;
+        pendingCredits.clear();
+        creditedUsers.clear();
+    }
+
+    /**
+     * Take the dirty state as one unit of work, leaving nothing pending.
+     * The users are copied under the lock so the disk write works on a consistent snapshot.
+     *
+     * @param histories Receives each user whose in-memory history was copied, with the rows copied
+     * @return The unit of work, or null if nothing needs writing
+     */
+    private synchronized DataManager.UnitOfWork takePendingWork(Map<User, List<Transaction>> histories) {
+        boolean writeCurrentUser = currentUser != null && headerDirty;
+        if (!writeCurrentUser && pendingCredits.isEmpty()) {
+            return null;
+        }
+        DataManager.UnitOfWork work = dataManager.beginWork();
+        if (writeCurrentUser) {
+            work.appendTransactions(copyOf(currentUser, histories), new ArrayList<>(pendingTransactions));
+            pendingTransactions.clear();
+            headerDirty = false;
+        }
+        // Credited users are copied under the same lock, so they match the sender's snapshot
+        for (Map.Entry<String, List<Transaction>> entry : pendingCredits.entrySet()) {
+            work.appendTransactions(copyOf(creditedUsers.get(entry.getKey()), histories), entry.getValue());
+        }
+        pendingCredits.clear();
+        creditedUsers.clear();
+        return work;
+    }
+
+    /**
+     * Take the callbacks waiting for the pending changes as one callback, leaving none pending.
+     * Changes with a callback always have a current user to write, so a unit of work is taken with them.
+     *
+     * @return The callback, or null if nothing is waiting
+     */
+    private synchronized DataManager.Callback<Boolean> takeCallbacks() {
+        if (pendingCallbacks.isEmpty()) {
+            return null;
+        }
+        List<DataManager.Callback<Boolean>> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        return committed -> {
+            for (DataManager.Callback<Boolean> callback : callbacks) {
+                callback.onComplete(committed);
+            }
+        };
+    }
+
+    /**
+     * Get a callback for a commit that drops the in-memory history rows it wrote, then tells
+     * the waiting callback. Once stored, the rows are only read from the store, so later
+     * commits copy just the rows added since.
+     *
+     * @param histories The users whose in-memory history the commit copied, with the rows copied
+     * @param callback  Receives the commit's result afterwards, may be null
+     */
+    private DataManager.Callback<Boolean> afterCommit(Map<User, List<Transaction>> histories,
+            DataManager.Callback<Boolean> callback) {
+        if (histories.isEmpty()) {
+            return callback;
+        }
+        return committed -> {
+            if (committed) {
+                dropWrittenRows(histories);
+            }
+            if (callback != null) {
+                callback.onComplete(committed);
+            }
+        };
+    }
+
+    private synchronized void dropWrittenRows(Map<User, List<Transaction>> histories) {
+        for (Map.Entry<User, List<Transaction>> entry : histories.entrySet()) {
+            List<Transaction> history = entry.getKey().getTransactions();
+            List<Transaction> written = entry.getValue();
+            // Rows are only ever appended, so the written ones lead the list unless a
+            // later commit that copied them has dropped them already
+            int count = 0;
+            while (count < written.size() && count < history.size() && history.get(count) == written.get(count)) {
+                count++;
+            }
+            history.subList(0, count).clear();
+        }
+    }
+
+    private synchronized DurabilityMode durabilityOf(DataManager.UnitOfWork work) {
+        return durability.get(work.hasTransactions() ? Operation.TRANSACTION : Operation.PROFILE);
+    }
+
+    /**
+     * Copy a user for a commit.
+     *
+     * @param histories Receives the user with the rows copied, if their in-memory history was copied
+     */
+    private static User copyOf(User user, Map<User, List<Transaction>> histories) {
+        User copy = new User();
+        copy.setUserId(user.getUserId());
+        copy.setEmail(user.getEmail());
+        copy.setPassword(user.getPassword());
+        copy.setFullName(user.getFullName());
+        copy.setPhoneNumber(user.getPhoneNumber());
+        copy.setAccountNumber(user.getAccountNumber());
+        copy.setBalance(user.getBalance());
+        copy.setLanguage(user.getLanguage());
+        copy.setBiometricEnabled(user.isBiometricEnabled());
+        // A storage-backed history is already stored, so only in-memory histories are copied;
+        // those hold just the rows no commit has written yet, or a whole history not stored yet
+        if (user.getTransactions() instanceof LazyTransactionList || user.getTransactions().isEmpty()) {
+            copy.setTransactions(new ArrayList<Transaction>());
+        } else {
+            copy.setTransactions(new ArrayList<>(user.getTransactions()));
+            histories.put(user, copy.getTransactions());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,524 @@
+package com.example.raybank.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.model.User;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link UserStore} backed by an SQLite database.
+ *
+ * Users and transactions live in their own tables, with indexes on email, account
+ * number and user_id, so lookups and statement pages are indexed queries
+ * instead of decoding JSON. Amounts are stored as INTEGER minor units (sen) and types
+ * as their one-byte {@link TransactionType} code. Each
+ * commit writes all of its rows inside one database transaction. A synced commit runs
+ * with synchronous=FULL, so the WAL is fsynced before it returns; other commits run with
+ * NORMAL, which in WAL mode can lose the latest commits in a power cut but never corrupts.
+ *
+ * Pages of the newest transactions use the row id as their cursor, served by an index
+ * on user_id (which SQLite keeps in row id order within each user).
+ *
+ * Account snapshots are kept in their own table together with the last transaction
+ * row they cover, so the tail after a snapshot is a rowid range scan. Rows before a
+ * snapshot stay in place for the statement screens, which page through them by index.
+ */
+public class SqliteUserStore implements UserStore {
+    private static final String DATABASE_NAME = "raybank.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_USERS = "users";
+    private static final String TABLE_TRANSACTIONS = "transactions";
+    private static final String TABLE_SNAPSHOTS = "snapshots";
+
+    private static final String USER_COLUMNS = "user_id, email, password, full_name, phone_number, "
+            + "account_number, balance_sen, language, biometric_enabled";
+    private static final String TRANSACTION_COLUMNS = "transaction_id, type_code, amount_sen, "
+            + "balance_after_sen, timestamp, description";
+    private static final String SNAPSHOT_COLUMNS = "sequence, balance_sen, deposit_count, deposit_total_sen, "
+            + "withdraw_count, withdraw_total_sen, transfer_count, transfer_total_sen, last_row_id";
+    // Oldest first, in the order transactions were recorded, as pages and snapshots read them
+    private static final String TRANSACTION_ORDER = " ORDER BY _id";
+
+    private final OpenHelper openHelper;
+    // By userId; kept for the life of the store, as rows are never deleted
+    private final Map<String, PageKeys> pageKeys = new HashMap<>();
+    // Synchronous level the connection was last set to, so it is only changed when needed
+    private Boolean fullSync;
+
+    public SqliteUserStore(Context context) {
+        this.openHelper = new OpenHelper(context);
+    }
+
+    @Override
+    public User getUser(String userId, boolean includeTransactions) {
+        return queryUser("user_id = ?", userId, includeTransactions);
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return queryUser("email = ?", email, true);
+    }
+
+    @Override
+    public User getUserByAccountNumber(String accountNumber) {
+        return queryUser("account_number = ?", accountNumber, true);
+    }
+
+    @Override
+    public boolean hasUser(String userId) {
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(
+                "SELECT 1 FROM " + TABLE_USERS + " WHERE user_id = ?", new String[]{userId})) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    @Override
+    public void commit(Collection<User> users, Map<String, List<Transaction>> appended, boolean sync)
+            throws IOException {
+        SQLiteDatabase db = openHelper.getWritableDatabase();
+        if (fullSync == null || fullSync != sync) {
+            // Can only be changed outside a transaction
+            db.execSQL("PRAGMA synchronous = " + (sync ? "FULL" : "NORMAL"));
+            fullSync = sync;
+        }
+        db.beginTransaction();
+        try (SQLiteStatement insertUser = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_USERS
+                + " (" + USER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                SQLiteStatement insertTransaction = db.compileStatement("INSERT INTO " + TABLE_TRANSACTIONS
+                        + " (user_id, " + TRANSACTION_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (User user : users) {
+                // First save of this user: store their whole history
+                List<Transaction> transactions = hasUser(user.getUserId())
+                        ? appended.get(user.getUserId()) : user.getTransactions();
+                bindUser(insertUser, user);
+                insertUser.executeInsert();
+                if (transactions != null) {
+                    for (Transaction transaction : transactions) {
+                        bindTransaction(insertTransaction, user.getUserId(), transaction);
+                        insertTransaction.executeInsert();
+                    }
+                }
+                updateSnapshot(db, user);
+            }
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            throw new IOException("Could not commit users", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public AccountSnapshot getSnapshot(String userId) {
+        try (Cursor cursor = querySnapshot(openHelper.getReadableDatabase(), userId)) {
+            return cursor.moveToFirst() ? readSnapshot(cursor) : null;
+        }
+    }
+
+    @Override
+    public List<Transaction> getTransactionsSince(String userId, long sequence) {
+        SQLiteDatabase db = openHelper.getReadableDatabase();
+        try (Cursor cursor = querySnapshot(db, userId)) {
+            if (cursor.moveToFirst() && cursor.getLong(0) == sequence) {
+                return queryTransactionsAfter(db, userId, cursor.getLong(8));
+            }
+        }
+        return queryTransactions(userId, -1, (int) sequence);
+    }
+
+    /**
+     * Cursors are row ids, so pages follow the order transactions were recorded in.
+     */
+    @Override
+    public TransactionPage getTransactions(String userId, long beforeCursor, int limit) {
+        TransactionLog transactions = new TransactionLog();
+        long lastRowId = TransactionPage.END;
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery("SELECT " + TRANSACTION_COLUMNS
+                        + ", _id FROM " + TABLE_TRANSACTIONS + " WHERE user_id = ? AND _id < ?"
+                        + TRANSACTION_ORDER + " DESC LIMIT " + limit,
+                new String[]{userId, Long.toString(beforeCursor)})) {
+            while (cursor.moveToNext()) {
+                appendTransaction(cursor, transactions);
+                lastRowId = cursor.getLong(6);
+            }
+        }
+        // A short page is the last one; a full one may be followed by an empty page
+        return new TransactionPage(transactions, transactions.size() < limit ? TransactionPage.END : lastRowId);
+    }
+
+    @Override
+    public TransactionReader openTransactions(User user) throws IOException {
+        if (!hasUser(user.getUserId())) {
+            commit(Collections.singletonList(user), Collections.<String, List<Transaction>>emptyMap(), true);
+        }
+        return new PagedReader(user.getUserId());
+    }
+
+    private User queryUser(String selection, String value, boolean includeTransactions) {
+        User user = null;
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery("SELECT " + USER_COLUMNS
+                + " FROM " + TABLE_USERS + " WHERE " + selection + " LIMIT 1", new String[]{value})) {
+            if (cursor.moveToFirst()) {
+                user = readUser(cursor);
+            }
+        }
+        if (user != null && includeTransactions) {
+            user.setTransactions(new LazyTransactionList(new PagedReader(user.getUserId())));
+        }
+        return user;
+    }
+
+    /**
+     * Query a user's transactions, oldest first.
+     *
+     * @param limit  Maximum number of rows, or -1 for all of them
+     * @param offset Number of rows to skip
+     */
+    private List<Transaction> queryTransactions(String userId, int limit, int offset) {
+        List<Transaction> transactions = new ArrayList<>();
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery("SELECT " + TRANSACTION_COLUMNS
+                        + " FROM " + TABLE_TRANSACTIONS + " WHERE user_id = ?" + TRANSACTION_ORDER
+                        + " LIMIT " + limit + " OFFSET " + offset,
+                new String[]{userId})) {
+            while (cursor.moveToNext()) {
+                transactions.add(readTransaction(cursor));
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Take a new snapshot of a user when they have none yet or enough transactions have
+     * been added since the last one. Runs inside the commit's database transaction.
+     */
+    private void updateSnapshot(SQLiteDatabase db, User user) {
+        String userId = user.getUserId();
+        AccountSnapshot snapshot = new AccountSnapshot();
+        long lastRowId = 0;
+        boolean exists;
+        try (Cursor cursor = querySnapshot(db, userId)) {
+            exists = cursor.moveToFirst();
+            if (exists) {
+                snapshot = readSnapshot(cursor);
+                lastRowId = cursor.getLong(8);
+            }
+        }
+        if (exists) {
+            try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_TRANSACTIONS
+                    + " WHERE _id > ? AND user_id = ?", new String[]{Long.toString(lastRowId), userId})) {
+                if (cursor.moveToFirst() && cursor.getInt(0) < AccountSnapshot.INTERVAL) {
+                    return;
+                }
+            }
+        }
+
+        try (Cursor cursor = queryTail(db, userId, lastRowId)) {
+            while (cursor.moveToNext()) {
+                Transaction transaction = readTransaction(cursor);
+                if (!exists && snapshot.getSequence() == 0) {
+                    // The first snapshot folds from the balance before the first transaction
+                    snapshot.setBalance(AccountReplay.openingBalance(transaction, user.getBalance()));
+                }
+                snapshot.apply(transaction);
+                lastRowId = cursor.getLong(6);
+            }
+        }
+        if (!exists && snapshot.getSequence() == 0) {
+            snapshot.setBalance(user.getBalance());
+        }
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_SNAPSHOTS + " (user_id, " + SNAPSHOT_COLUMNS
+                        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                new Object[]{userId, snapshot.getSequence(), snapshot.getBalance(),
+                        snapshot.getDepositCount(), snapshot.getDepositTotal(),
+                        snapshot.getWithdrawCount(), snapshot.getWithdrawTotal(),
+                        snapshot.getTransferCount(), snapshot.getTransferTotal(), lastRowId});
+    }
+
+    private static Cursor querySnapshot(SQLiteDatabase db, String userId) {
+        return db.rawQuery("SELECT " + SNAPSHOT_COLUMNS + " FROM " + TABLE_SNAPSHOTS + " WHERE user_id = ?",
+                new String[]{userId});
+    }
+
+    /**
+     * Query a user's transactions after a row, with the row id as an extra last column.
+     */
+    private static Cursor queryTail(SQLiteDatabase db, String userId, long afterRowId) {
+        return db.rawQuery("SELECT " + TRANSACTION_COLUMNS + ", _id FROM " + TABLE_TRANSACTIONS
+                        + " WHERE _id > ? AND user_id = ?" + TRANSACTION_ORDER,
+                new String[]{Long.toString(afterRowId), userId});
+    }
+
+    private static List<Transaction> queryTransactionsAfter(SQLiteDatabase db, String userId, long afterRowId) {
+        List<Transaction> transactions = new ArrayList<>();
+        try (Cursor cursor = queryTail(db, userId, afterRowId)) {
+            while (cursor.moveToNext()) {
+                transactions.add(readTransaction(cursor));
+            }
+        }
+        return transactions;
+    }
+
+    private static AccountSnapshot readSnapshot(Cursor cursor) {
+        AccountSnapshot snapshot = new AccountSnapshot();
+        snapshot.setSequence(cursor.getLong(0));
+        snapshot.setBalance(cursor.getLong(1));
+        snapshot.setDepositCount(cursor.getInt(2));
+        snapshot.setDepositTotal(cursor.getLong(3));
+        snapshot.setWithdrawCount(cursor.getInt(4));
+        snapshot.setWithdrawTotal(cursor.getLong(5));
+        snapshot.setTransferCount(cursor.getInt(6));
+        snapshot.setTransferTotal(cursor.getLong(7));
+        return snapshot;
+    }
+
+    private int countTransactions(String userId) {
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM " + TABLE_TRANSACTIONS + " WHERE user_id = ?", new String[]{userId})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    private static void bindUser(SQLiteStatement statement, User user) {
+        statement.clearBindings();
+        statement.bindString(1, user.getUserId());
+        bindNullable(statement, 2, user.getEmail());
+        bindNullable(statement, 3, user.getPassword());
+        bindNullable(statement, 4, user.getFullName());
+        bindNullable(statement, 5, user.getPhoneNumber());
+        bindNullable(statement, 6, user.getAccountNumber());
+        statement.bindLong(7, user.getBalance());
+        bindNullable(statement, 8, user.getLanguage());
+        statement.bindLong(9, user.isBiometricEnabled() ? 1 : 0);
+    }
+
+    private static void bindTransaction(SQLiteStatement statement, String userId, Transaction transaction) {
+        statement.clearBindings();
+        statement.bindString(1, userId);
+        bindNullable(statement, 2, transaction.getTransactionId());
+        statement.bindLong(3, transaction.getType() != null ? transaction.getType().getCode() : 0);
+        statement.bindLong(4, transaction.getAmount());
+        statement.bindLong(5, transaction.getBalanceAfter());
+        statement.bindLong(6, transaction.getTimestamp());
+        bindNullable(statement, 7, transaction.getDescription());
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static User readUser(Cursor cursor) {
+        User user = new User();
+        user.setUserId(cursor.getString(0));
+        user.setEmail(cursor.getString(1));
+        user.setPassword(cursor.getString(2));
+        user.setFullName(cursor.getString(3));
+        user.setPhoneNumber(cursor.getString(4));
+        user.setAccountNumber(cursor.getString(5));
+        user.setBalance(cursor.getLong(6));
+        if (!cursor.isNull(7)) {
+            user.setLanguage(cursor.getString(7));
+        }
+        user.setBiometricEnabled(cursor.getInt(8) != 0);
+        return user;
+    }
+
+    private static Transaction readTransaction(Cursor cursor) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(cursor.getString(0));
+        transaction.setType(TransactionType.fromCode(cursor.getInt(1)));
+        transaction.setAmount(cursor.getLong(2));
+        transaction.setBalanceAfter(cursor.getLong(3));
+        transaction.setTimestamp(cursor.getLong(4));
+        transaction.setDescription(cursor.isNull(5) ? "" : cursor.getString(5));
+        return transaction;
+    }
+
+    /**
+     * Append the transaction at the cursor's row to a log without creating a Transaction.
+     */
+    private static void appendTransaction(Cursor cursor, TransactionLog log) {
+        log.append(cursor.getString(0), TransactionType.fromCode(cursor.getInt(1)), cursor.getLong(2),
+                cursor.getLong(3), cursor.getLong(4), cursor.isNull(5) ? "" : cursor.getString(5));
+    }
+
+    /**
+     * Reader that queries one page of rows at a time as they are asked for.
+     * The size is fixed when it is opened; open a new one to see later commits.
+     *
+     * A page is read by row id after the last row of the page before it, taken from
+     * the user's {@link PageKeys}, so it is an index seek however deep it is. Only a
+     * page beyond every page read so far falls back to skipping rows with OFFSET.
+     */
+    private class PagedReader implements TransactionReader {
+        // Matches the pages a LazyTransactionList reads through it
+        private static final int PAGE_SIZE = LazyTransactionList.PAGE_SIZE;
+
+        private final String userId;
+        private final int size;
+        private final PageKeys keys;
+        private List<Transaction> page = Collections.emptyList();
+        private int pageStart;
+
+        PagedReader(String userId) {
+            this.userId = userId;
+            this.size = countTransactions(userId);
+            this.keys = pageKeysOf(userId);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            if (index < pageStart || index >= pageStart + page.size()) {
+                pageStart = index - index % PAGE_SIZE;
+                page = readPage(index / PAGE_SIZE);
+            }
+            return page.get(index - pageStart);
+        }
+
+        private List<Transaction> readPage(int number) {
+            long afterRowId = number == 0 ? 0 : keys.getLastRowId(number - 1);
+            String sql = "SELECT " + TRANSACTION_COLUMNS + ", _id FROM " + TABLE_TRANSACTIONS;
+            String[] args;
+            if (afterRowId >= 0) {
+                sql += " WHERE _id > ? AND user_id = ?" + TRANSACTION_ORDER + " LIMIT " + PAGE_SIZE;
+                args = new String[]{Long.toString(afterRowId), userId};
+            } else {
+                sql += " WHERE user_id = ?" + TRANSACTION_ORDER + " LIMIT " + PAGE_SIZE
+                        + " OFFSET " + (long) number * PAGE_SIZE;
+                args = new String[]{userId};
+            }
+            List<Transaction> transactions = new ArrayList<>(PAGE_SIZE);
+            long lastRowId = 0;
+            try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(sql, args)) {
+                while (cursor.moveToNext()) {
+                    transactions.add(readTransaction(cursor));
+                    lastRowId = cursor.getLong(6);
+                }
+            }
+            // Rows are only appended, so a full page always ends at the same row
+            if (transactions.size() == PAGE_SIZE) {
+                keys.add(number, lastRowId);
+            }
+            return transactions;
+        }
+    }
+
+    private PageKeys pageKeysOf(String userId) {
+        synchronized (pageKeys) {
+            PageKeys keys = pageKeys.get(userId);
+            if (keys == null) {
+                keys = new PageKeys();
+                pageKeys.put(userId, keys);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Row id of the last row of each full page of one user's transactions, for the pages
+     * read so far in order from the first. Shared by the user's readers.
+     */
+    private static final class PageKeys {
+        private long[] lastRowIds = new long[16];
+        private int count;
+
+        /**
+         * @return The row id, or -1 if the page has not been read yet
+         */
+        synchronized long getLastRowId(int page) {
+            return page < count ? lastRowIds[page] : -1;
+        }
+
+        synchronized void add(int page, long lastRowId) {
+            // Only the page after the known ones extends them; others are known or leave a gap
+            if (page != count) {
+                return;
+            }
+            if (count == lastRowIds.length) {
+                lastRowIds = Arrays.copyOf(lastRowIds, count * 2);
+            }
+            lastRowIds[count++] = lastRowId;
+        }
+    }
+
+    private static class OpenHelper extends SQLiteOpenHelper {
+
+        OpenHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            // Readers on the main thread do not wait for the I/O thread's writes
+            db.enableWriteAheadLogging();
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                    + "user_id TEXT PRIMARY KEY, "
+                    + "email TEXT, "
+                    + "password TEXT, "
+                    + "full_name TEXT, "
+                    + "phone_number TEXT, "
+                    + "account_number TEXT, "
+                    + "balance_sen INTEGER NOT NULL, "
+                    + "language TEXT, "
+                    + "biometric_enabled INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX idx_users_email ON " + TABLE_USERS + " (email)");
+            db.execSQL("CREATE INDEX idx_users_account_number ON " + TABLE_USERS + " (account_number)");
+            db.execSQL("CREATE TABLE " + TABLE_TRANSACTIONS + " ("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "user_id TEXT NOT NULL, "
+                    + "transaction_id TEXT, "
+                    + "type_code INTEGER NOT NULL DEFAULT 0, "
+                    + "amount_sen INTEGER NOT NULL, "
+                    + "balance_after_sen INTEGER NOT NULL, "
+                    + "timestamp INTEGER NOT NULL, "
+                    + "description TEXT)");
+            // Kept in row id order within each user, which is the order every query reads in
+            db.execSQL("CREATE INDEX idx_transactions_user ON " + TABLE_TRANSACTIONS + " (user_id)");
+            db.execSQL("CREATE TABLE " + TABLE_SNAPSHOTS + " ("
+                    + "user_id TEXT PRIMARY KEY, "
+                    + "sequence INTEGER NOT NULL, "
+                    + "balance_sen INTEGER NOT NULL, "
+                    + "deposit_count INTEGER NOT NULL, "
+                    + "deposit_total_sen INTEGER NOT NULL, "
+                    + "withdraw_count INTEGER NOT NULL, "
+                    + "withdraw_total_sen INTEGER NOT NULL, "
+                    + "transfer_count INTEGER NOT NULL, "
+                    + "transfer_total_sen INTEGER NOT NULL, "
+                    + "last_row_id INTEGER NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // No older schema has been released
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only binary ledger of a user's transactions.
+ *
+ * Each transaction is a fixed-width record, so row N sits at a known offset and can
+ * be read straight out of a memory-mapped file without decoding the rest of the
+ * history. Descriptions are variable length and are kept in a companion
+ * {@code <userId>.desc} string table the record points into.
+ *
+ * Records live in at most two segments. {@code <userId>.ledger} is the archive and
+ * starts at row 0. Once {@link #archive(String, int)} has sealed the rows before a
+ * snapshot, new rows go to an active segment {@code <userId>.<start>.ledger}, and only
+ * that small segment is ever truncated or appended to. The next archive copies the
+ * active segment onto the end of the archive and starts a new one.
+ *
+ * Record layout (little endian, {@link #RECORD_SIZE} bytes):
+ * <pre>
+ *   0  long  id            numeric part of "TXN..." ids
+ *   8  byte  type code     see {@link TransactionType#getCode()}, 0 for none
+ *   9  byte[3] padding
+ *  12  int   description offset into the .desc file
+ *  16  long  amount        in minor units (sen)
+ *  24  long  balanceAfter  in minor units (sen)
+ *  32  long  timestamp     epoch milliseconds
+ * </pre>
+ */
+public class TransactionLedger {
+    public static final int RECORD_SIZE = 40;
+
+    private static final String LEDGER_DIR = "ledger";
+    private static final String LEDGER_EXTENSION = ".ledger";
+    private static final String SEGMENT_SEPARATOR = ".";
+    private static final String DESCRIPTION_EXTENSION = ".desc";
+    private static final String ID_PREFIX = "TXN";
+
+    private final File directory;
+    // First row of each user's active segment; 0 while the archive is still the active segment
+    private final Map<String, Integer> activeStarts = new ConcurrentHashMap<>();
+
+    /**
+     * Create a ledger store rooted in the given base directory.
+     *
+     * @param baseDir Directory the ledger folder is created in (usually getFilesDir())
+     */
+    public TransactionLedger(File baseDir) {
+        this.directory = new File(baseDir, LEDGER_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Check whether a ledger has been started for a user.
+     */
+    public boolean exists(String userId) {
+        return getSegmentFile(userId, 0).exists();
+    }
+
+    /**
+     * Append transactions after the committed records of a user's ledger.
+     * Creates the ledger if it does not exist yet, even when the list is empty.
+     *
+     * @param committedCount Number of records the caller has committed; anything after
+     *                       them was never committed and is overwritten. Pass -1 to keep
+     *                       every complete record.
+     * @param sync           true to fsync the records and descriptions before returning
+     * @return The number of records in the ledger after the append
+     */
+    public int append(String userId, List<Transaction> transactions, int committedCount, boolean sync)
+            throws IOException {
+        File descriptionFile = getDescriptionFile(userId);
+        long descriptionOffset = descriptionFile.length();
+
+        ByteBuffer descriptions = ByteBuffer.allocate(estimateDescriptionBytes(transactions))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * transactions.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (Transaction transaction : transactions) {
+            String description = transaction.getDescription() != null ? transaction.getDescription() : "";
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            int offset = (int) (descriptionOffset + descriptions.position());
+            descriptions.putInt(bytes.length).put(bytes);
+
+            records.putLong(parseId(transaction.getTransactionId()));
+            records.put(transaction.getType() != null ? transaction.getType().getCode() : 0);
+            records.put((byte) 0).put((byte) 0).put((byte) 0);
+            records.putInt(offset);
+            records.putLong(transaction.getAmount());
+            records.putLong(transaction.getBalanceAfter());
+            records.putLong(transaction.getTimestamp());
+        }
+
+        // Descriptions first, so a record never points past the end of the string table
+        try (FileOutputStream out = new FileOutputStream(descriptionFile, true)) {
+            out.write(descriptions.array(), 0, descriptions.position());
+            if (sync) {
+                out.getFD().sync();
+            }
+        }
+        int start = getActiveStart(userId);
+        try (RandomAccessFile ledgerFile = new RandomAccessFile(getSegmentFile(userId, start), "rw");
+                FileChannel channel = ledgerFile.getChannel()) {
+            // Drop a torn trailing record so new records stay aligned
+            long end = channel.size() - channel.size() % RECORD_SIZE;
+            if (committedCount >= 0) {
+                end = Math.max(0, Math.min(end, (long) (committedCount - start) * RECORD_SIZE));
+            }
+            channel.truncate(end);
+            records.flip();
+            channel.write(records, end);
+            if (sync) {
+                channel.force(false);
+            }
+            return start + (int) (end / RECORD_SIZE) + transactions.size();
+        }
+    }
+
+    /**
+     * Seal the rows before a snapshot into the archive and start a new active segment there.
+     * Call only once a header covering exactly {@code sequence} rows has been committed.
+     * Interrupted runs are safe to repeat: the archive is cut back to the rows it had
+     * sealed before, and the old active segment is removed only after its copy is on disk.
+     *
+     * @param sequence Number of committed rows the snapshot covers
+     */
+    public void archive(String userId, int sequence) throws IOException {
+        int start = getActiveStart(userId);
+        if (sequence <= start) {
+            return;
+        }
+        File activeFile = getSegmentFile(userId, start);
+        try (RandomAccessFile archiveFile = new RandomAccessFile(getSegmentFile(userId, 0), "rw");
+                FileChannel archive = archiveFile.getChannel()) {
+            if (start == 0) {
+                // The archive is the active segment: just drop anything uncommitted
+                archive.truncate((long) sequence * RECORD_SIZE);
+            } else {
+                archive.truncate((long) start * RECORD_SIZE);
+                archive.position((long) start * RECORD_SIZE);
+                try (RandomAccessFile active = new RandomAccessFile(activeFile, "r");
+                        FileChannel activeChannel = active.getChannel()) {
+                    long length = (long) (sequence - start) * RECORD_SIZE;
+                    long copied = 0;
+                    while (copied < length) {
+                        long count = activeChannel.transferTo(copied, length - copied, archive);
+                        if (count <= 0) {
+                            throw new IOException("Active segment of " + userId + " is shorter than " + sequence);
+                        }
+                        copied += count;
+                    }
+                }
+            }
+            archive.force(false);
+        }
+        getSegmentFile(userId, sequence).createNewFile();
+        activeStarts.put(userId, sequence);
+        if (start > 0) {
+            activeFile.delete();
+        }
+    }
+
+    /**
+     * Map a user's ledger for random access.
+     * The reader sees the records present when it was opened; open a new one to see later appends.
+     *
+     * @param committedCount Number of committed records to expose, or -1 for every complete record
+     * @return A reader over the ledger, empty if no ledger exists
+     */
+    public Reader open(String userId, int committedCount) throws IOException {
+        int start = getActiveStart(userId);
+        MappedByteBuffer active = start > 0 ? map(getSegmentFile(userId, start)) : null;
+        return new Reader(map(getSegmentFile(userId, 0)), start, active, map(getDescriptionFile(userId)),
+                committedCount);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    /**
+     * Get the file of the segment starting at the given row; row 0 is the archive.
+     */
+    private File getSegmentFile(String userId, int start) {
+        String name = start == 0 ? userId : userId + SEGMENT_SEPARATOR + start;
+        return new File(directory, name + LEDGER_EXTENSION);
+    }
+
+    /**
+     * Find the first row of a user's active segment, removing segments an interrupted
+     * {@link #archive(String, int)} left behind.
+     */
+    private int getActiveStart(String userId) {
+        Integer cached = activeStarts.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        String prefix = userId + SEGMENT_SEPARATOR;
+        List<Integer> starts = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix) && name.endsWith(LEDGER_EXTENSION)
+                        && name.length() > prefix.length() + LEDGER_EXTENSION.length()) {
+                    try {
+                        starts.add(Integer.parseInt(
+                                name.substring(prefix.length(), name.length() - LEDGER_EXTENSION.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a segment of this user
+                    }
+                }
+            }
+        }
+        int start = starts.isEmpty() ? 0 : Collections.max(starts);
+        for (int stale : starts) {
+            if (stale != start) {
+                // Already copied into the archive before the newer segment was created
+                getSegmentFile(userId, stale).delete();
+            }
+        }
+        activeStarts.put(userId, start);
+        return start;
+    }
+
+    private File getDescriptionFile(String userId) {
+        return new File(directory, userId + DESCRIPTION_EXTENSION);
+    }
+
+    private static int estimateDescriptionBytes(List<Transaction> transactions) {
+        int total = 0;
+        for (Transaction transaction : transactions) {
+            String description = transaction.getDescription() != null ? transaction.getDescription() : "";
+            // UTF-8 never needs more than 3 bytes per UTF-16 char
+            total += 4 + description.length() * 3;
+        }
+        return total;
+    }
+
+    private static long parseId(String transactionId) {
+        if (transactionId != null && transactionId.startsWith(ID_PREFIX)) {
+            try {
+                return Long.parseLong(transactionId.substring(ID_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                // Fall through to 0 for ids not generated by Transaction
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Random-access view over a memory-mapped ledger.
+     * Rows are indexed oldest first, in the order they were appended.
+     */
+    public static class Reader implements TransactionReader {
+        private final MappedByteBuffer archive;
+        private final int activeStart;
+        private final MappedByteBuffer active;
+        private final MappedByteBuffer descriptions;
+        private final int size;
+
+        Reader(MappedByteBuffer archive, int activeStart, MappedByteBuffer active, MappedByteBuffer descriptions,
+                int committedCount) {
+            this.archive = archive;
+            this.activeStart = activeStart;
+            this.active = active;
+            this.descriptions = descriptions;
+            // A torn trailing record from an interrupted append is ignored
+            int complete = activeStart > 0
+                    ? activeStart + (active != null ? active.capacity() / RECORD_SIZE : 0)
+                    : (archive != null ? archive.capacity() / RECORD_SIZE : 0);
+            this.size = committedCount >= 0 ? Math.min(complete, committedCount) : complete;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            MappedByteBuffer records = recordsFor(index);
+            int base = recordBase(index);
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId(ID_PREFIX + records.getLong(base));
+            transaction.setType(TransactionType.fromCode(records.get(base + 8)));
+            transaction.setDescription(readDescription(records.getInt(base + 12)));
+            transaction.setAmount(records.getLong(base + 16));
+            transaction.setBalanceAfter(records.getLong(base + 24));
+            transaction.setTimestamp(records.getLong(base + 32));
+            return transaction;
+        }
+
+        /**
+         * Append the row at the given index to a log without creating a Transaction.
+         */
+        public void appendTo(int index, TransactionLog log) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            MappedByteBuffer records = recordsFor(index);
+            int base = recordBase(index);
+            log.append(records.getLong(base), TransactionType.fromCode(records.get(base + 8)),
+                    records.getLong(base + 16), records.getLong(base + 24), records.getLong(base + 32),
+                    readDescription(records.getInt(base + 12)));
+        }
+
+        private MappedByteBuffer recordsFor(int index) {
+            return activeStart > 0 && index >= activeStart ? active : archive;
+        }
+
+        private int recordBase(int index) {
+            return (activeStart > 0 && index >= activeStart ? index - activeStart : index) * RECORD_SIZE;
+        }
+
+        private String readDescription(int offset) {
+            if (descriptions == null || offset + 4 > descriptions.capacity()) {
+                return "";
+            }
+            int length = descriptions.getInt(offset);
+            byte[] bytes = new byte[length];
+            ByteBuffer slice = descriptions.duplicate();
+            slice.position(offset + 4);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only, column-oriented list of transactions.
+ *
+ * Each field is kept in its own primitive array, in fixed-size chunks so growing never
+ * copies the rows already stored, and descriptions are shared through a string table.
+ * A row costs about 40 bytes instead of a Transaction object and its strings.
+ *
+ * Screens read rows through the per-field accessors, which allocate nothing.
+ * As a {@code List<Transaction>}, {@link #get(int)} decodes a new Transaction per call.
+ *
+ * Rows are never changed once appended, so {@link #snapshot()} can share every chunk with
+ * the log instead of copying it. A snapshot is immutable and can be read from any thread
+ * it is handed to while the log keeps growing; the log itself is not thread-safe.
+ */
+public class TransactionLog extends AbstractList<Transaction> implements TransactionReader {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final String ID_PREFIX = "TXN";
+
+    // Ids that are not "TXN" followed by a number are stored as -1 - their string index
+    private long[][] ids;
+    private long[][] amounts;
+    private long[][] balances;
+    private long[][] timestamps;
+    private byte[][] types;
+    private int[][] descriptions;
+    private int size;
+
+    private String[][] strings;
+    private int stringCount;
+    // Only the log being appended to has one; snapshots are read-only
+    private final Map<String, Integer> stringIndexes;
+
+    public TransactionLog() {
+        ids = new long[1][];
+        amounts = new long[1][];
+        balances = new long[1][];
+        timestamps = new long[1][];
+        types = new byte[1][];
+        descriptions = new int[1][];
+        strings = new String[1][];
+        stringIndexes = new HashMap<>();
+    }
+
+    private TransactionLog(TransactionLog log) {
+        // The outer arrays are shared too: the log only ever fills slots past this size
+        ids = log.ids;
+        amounts = log.amounts;
+        balances = log.balances;
+        timestamps = log.timestamps;
+        types = log.types;
+        descriptions = log.descriptions;
+        size = log.size;
+        strings = log.strings;
+        stringCount = log.stringCount;
+        stringIndexes = null;
+    }
+
+    /**
+     * Get an immutable view of the rows appended so far, in constant time.
+     * Later appends to this log do not show in the snapshot.
+     */
+    public TransactionLog snapshot() {
+        return stringIndexes == null ? this : new TransactionLog(this);
+    }
+
+    /**
+     * Append a row.
+     */
+    public void append(String transactionId, TransactionType type, long amount, long balanceAfter,
+            long timestamp, String description) {
+        checkWritable();
+        long id = parseId(transactionId);
+        appendRow(id >= 0 ? id : -1 - intern(transactionId), type, amount, balanceAfter, timestamp,
+                description);
+    }
+
+    /**
+     * Append a row whose transaction id is "TXN" followed by {@code id}.
+     */
+    public void append(long id, TransactionType type, long amount, long balanceAfter, long timestamp,
+            String description) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative transaction id: " + id);
+        }
+        appendRow(id, type, amount, balanceAfter, timestamp, description);
+    }
+
+    private void appendRow(long id, TransactionType type, long amount, long balanceAfter, long timestamp,
+            String description) {
+        checkWritable();
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == ids.length) {
+            int capacity = chunk * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            types = Arrays.copyOf(types, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+        }
+        if (ids[chunk] == null) {
+            ids[chunk] = new long[CHUNK_SIZE];
+            amounts[chunk] = new long[CHUNK_SIZE];
+            balances[chunk] = new long[CHUNK_SIZE];
+            timestamps[chunk] = new long[CHUNK_SIZE];
+            types[chunk] = new byte[CHUNK_SIZE];
+            descriptions[chunk] = new int[CHUNK_SIZE];
+        }
+
+        int offset = size & CHUNK_MASK;
+        ids[chunk][offset] = id;
+        amounts[chunk][offset] = amount;
+        balances[chunk][offset] = balanceAfter;
+        timestamps[chunk][offset] = timestamp;
+        types[chunk][offset] = type != null ? type.getCode() : 0;
+        descriptions[chunk][offset] = intern(description);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Append every row of another log, without decoding them into objects.
+     */
+    public void appendAll(TransactionLog other) {
+        checkWritable();
+        for (int i = 0; i < other.size; i++) {
+            long id = other.ids[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+            appendRow(id >= 0 ? id : -1 - intern(other.getString((int) (-1 - id))), other.getType(i),
+                    other.getAmount(i), other.getBalanceAfter(i), other.getTimestamp(i), other.getDescription(i));
+        }
+    }
+
+    /**
+     * Only appending is supported.
+     */
+    @Override
+    public void add(int index, Transaction transaction) {
+        if (index != size) {
+            throw new UnsupportedOperationException("Transactions can only be appended");
+        }
+        append(transaction.getTransactionId(), transaction.getType(), transaction.getAmount(),
+                transaction.getBalanceAfter(), transaction.getTimestamp(), transaction.getDescription());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decode a row into a new Transaction. Prefer the per-field accessors when binding views.
+     */
+    @Override
+    public Transaction get(int index) {
+        checkIndex(index);
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(getTransactionId(index));
+        transaction.setType(getType(index));
+        transaction.setAmount(getAmount(index));
+        transaction.setBalanceAfter(getBalanceAfter(index));
+        transaction.setTimestamp(getTimestamp(index));
+        transaction.setDescription(getDescription(index));
+        return transaction;
+    }
+
+    public String getTransactionId(int index) {
+        checkIndex(index);
+        long id = ids[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        return id >= 0 ? ID_PREFIX + id : getString((int) (-1 - id));
+    }
+
+    public TransactionType getType(int index) {
+        checkIndex(index);
+        return TransactionType.fromCode(types[index >>> CHUNK_SHIFT][index & CHUNK_MASK]);
+    }
+
+    /**
+     * Get a row's amount, in sen.
+     */
+    public long getAmount(int index) {
+        checkIndex(index);
+        return amounts[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Get a row's balance after the transaction, in sen.
+     */
+    public long getBalanceAfter(int index) {
+        checkIndex(index);
+        return balances[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Get a row's time, in epoch milliseconds.
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Get a row's description. Rows with the same description share one String.
+     */
+    public String getDescription(int index) {
+        checkIndex(index);
+        return getString(descriptions[index >>> CHUNK_SHIFT][index & CHUNK_MASK]);
+    }
+
+    /**
+     * Get the number in a "TXN" id, or -1 for any other id.
+     */
+    private static long parseId(String transactionId) {
+        if (transactionId == null || !transactionId.startsWith(ID_PREFIX)
+                || transactionId.length() == ID_PREFIX.length()) {
+            return -1;
+        }
+        for (int i = ID_PREFIX.length(); i < transactionId.length(); i++) {
+            char c = transactionId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(transactionId.substring(ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            // Too long for a long
+            return -1;
+        }
+    }
+
+    private String getString(int index) {
+        return strings[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            value = "";
+        }
+        Integer index = stringIndexes.get(value);
+        if (index == null) {
+            // Chunked like the rows, so snapshots can share the table as it grows
+            int chunk = stringCount >>> CHUNK_SHIFT;
+            if (chunk == strings.length) {
+                strings = Arrays.copyOf(strings, chunk * 2);
+            }
+            if (strings[chunk] == null) {
+                strings[chunk] = new String[CHUNK_SIZE];
+            }
+            strings[chunk][stringCount & CHUNK_MASK] = value;
+            index = stringCount++;
+            stringIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private void checkWritable() {
+        if (stringIndexes == null) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
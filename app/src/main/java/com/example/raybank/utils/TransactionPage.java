@@ -0,0 +1,40 @@
+package com.example.raybank.utils;
+
+/**
+ * One page of a user's transactions, newest first, with the cursor for the page after it.
+ * Cursors are positions in the user's stored history, so transactions recorded after
+ * the first page was read do not shift the later pages.
+ * The rows are held in a {@link TransactionLog}, so a page costs no object per transaction.
+ */
+public class TransactionPage {
+    /** Cursor for the first page, starting from the newest transaction. */
+    public static final long FIRST = Long.MAX_VALUE;
+    /** Next cursor of the last page: there are no older transactions. */
+    public static final long END = -1;
+
+    private final TransactionLog transactions;
+    private final long nextCursor;
+
+    public TransactionPage(TransactionLog transactions, long nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Get the transactions in this page, newest first.
+     */
+    public TransactionLog getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Get the cursor to pass for the next, older page, or {@link #END}.
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != END;
+    }
+}
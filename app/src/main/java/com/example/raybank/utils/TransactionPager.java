@@ -0,0 +1,60 @@
+package com.example.raybank.utils;
+
+/**
+ * Loads the current user's transactions one page at a time, newest first, for a list
+ * screen that asks for the next page as it scrolls towards the end.
+ * Used from the main thread; pages are read on the {@link DataManager} I/O thread.
+ */
+public class TransactionPager {
+    /** Transactions read per page. */
+    public static final int PAGE_SIZE = 30;
+
+    private final SessionRepository session;
+    private final TransactionLog transactions = new TransactionLog();
+    private long cursor = TransactionPage.FIRST;
+    private boolean loading;
+
+    public TransactionPager(SessionRepository session) {
+        this.session = session;
+    }
+
+    /**
+     * Get the transactions loaded so far, newest first.
+     * Pages are added to the end of this log as they load.
+     */
+    public TransactionLog getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Check whether there are older transactions left to load.
+     */
+    public boolean hasMore() {
+        return cursor != TransactionPage.END;
+    }
+
+    /**
+     * Load the next page, unless one is already loading or every page has been loaded.
+     *
+     * @param callback Receives on the main thread the number of transactions added to
+     *                 the end of {@link #getTransactions()}
+     */
+    public void loadNextPage(DataManager.Callback<Integer> callback) {
+        if (loading || !hasMore()) {
+            return;
+        }
+        loading = true;
+        session.loadTransactions(cursor, PAGE_SIZE, page -> {
+            loading = false;
+            if (page == null) {
+                // Stop instead of retrying on every scroll
+                cursor = TransactionPage.END;
+                callback.onComplete(0);
+                return;
+            }
+            transactions.appendAll(page.getTransactions());
+            cursor = page.getNextCursor();
+            callback.onComplete(page.getTransactions().size());
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.Transaction;
+
+/**
+ * Random-access view over a user's stored transactions.
+ * Rows are indexed oldest first and decoded only when asked for.
+ */
+public interface TransactionReader {
+
+    /**
+     * Get the number of transactions the reader can see.
+     */
+    int size();
+
+    /**
+     * Decode the transaction at the given row.
+     *
+     * @param index Row number, 0 being the oldest transaction
+     * @return The decoded transaction
+     */
+    Transaction get(int index);
+}
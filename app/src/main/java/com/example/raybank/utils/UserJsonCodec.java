@@ -0,0 +1,378 @@
+package com.example.raybank.utils;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.model.User;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON codec for {@link User} and {@link Transaction}.
+ * Decodes straight from the token stream into model objects without building an
+ * intermediate JSON tree, and can skip the embedded transactions array entirely.
+ *
+ * Amounts are written as integer sen in the *Sen fields. Data written by older versions
+ * holds double ringgit in the plain fields instead, which is still read.
+ */
+public final class UserJsonCodec {
+
+    private UserJsonCodec() {
+    }
+
+    /**
+     * Decoded user header together with the number of ledger records it has committed.
+     */
+    public static final class Header {
+        public final User user;
+        /** Committed ledger records, or -1 for headers written before this was tracked. */
+        public final int ledgerSize;
+        /** Latest account snapshot, or null for headers written before snapshots were taken. */
+        public final AccountSnapshot snapshot;
+
+        Header(User user, int ledgerSize, AccountSnapshot snapshot) {
+            this.user = user;
+            this.ledgerSize = ledgerSize;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Encode a user header (profile and balance, no transactions).
+     *
+     * @param ledgerSize Number of ledger records this header accounts for, or -1 to omit
+     */
+    public static String writeUser(User user, int ledgerSize) throws IOException {
+        return writeUser(user, ledgerSize, null);
+    }
+
+    /**
+     * Encode a user header together with their latest account snapshot.
+     *
+     * @param ledgerSize Number of ledger records this header accounts for, or -1 to omit
+     * @param snapshot   The snapshot to store, or null to omit
+     */
+    public static String writeUser(User user, int ledgerSize, AccountSnapshot snapshot) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("userId").value(user.getUserId());
+            writer.name("email").value(user.getEmail());
+            writer.name("password").value(user.getPassword());
+            writer.name("fullName").value(user.getFullName());
+            writer.name("phoneNumber").value(user.getPhoneNumber());
+            writer.name("accountNumber").value(user.getAccountNumber());
+            writer.name("balanceSen").value(user.getBalance());
+            writer.name("language").value(user.getLanguage());
+            writer.name("biometricEnabled").value(user.isBiometricEnabled());
+            if (ledgerSize >= 0) {
+                writer.name("ledgerSize").value(ledgerSize);
+            }
+            if (snapshot != null) {
+                writer.name("snapshot");
+                writeSnapshot(writer, snapshot);
+            }
+            writer.endObject();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Decode a single user.
+     *
+     * @param json                The encoded user
+     * @param includeTransactions false to skip any embedded transactions array
+     */
+    public static User readUser(String json, boolean includeTransactions) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readUser(reader, includeTransactions).user;
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed user JSON", e);
+        }
+    }
+
+    /**
+     * Decode a user header, skipping any embedded transactions.
+     */
+    public static Header readHeader(String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readUser(reader, false);
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed user JSON", e);
+        }
+    }
+
+    /**
+     * Decode the legacy array holding every user and their transactions.
+     */
+    public static List<User> readUsers(String json) throws IOException {
+        return readUsers(json, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decode a slice of the legacy users array.
+     * Users before the slice are skipped without being decoded.
+     *
+     * @param offset Index of the first user to decode
+     * @param limit  Maximum number of users to decode
+     */
+    public static List<User> readUsers(String json, int offset, int limit) throws IOException {
+        List<User> users = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext() && users.size() < limit; index++) {
+                if (index < offset) {
+                    reader.skipValue();
+                } else {
+                    users.add(readUser(reader, true).user);
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed users JSON", e);
+        }
+        return users;
+    }
+
+    /**
+     * Find a user in the legacy users array by one of its string fields.
+     * Only the named field of each user is read; everything else is skipped.
+     *
+     * @param offset Index of the first user to consider
+     * @param field  Field to match, such as "userId" or "email"
+     * @return Index of the first matching user, or -1 if there is none
+     */
+    public static int findUser(String json, int offset, String field, String value) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                if (index < offset) {
+                    reader.skipValue();
+                } else if (matches(reader, field, value)) {
+                    return index;
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed users JSON", e);
+        }
+        return -1;
+    }
+
+    private static boolean matches(JsonReader reader, String field, String value) throws IOException {
+        boolean matched = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                matched = value.equals(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return matched;
+    }
+
+    private static Header readUser(JsonReader reader, boolean includeTransactions) throws IOException {
+        User user = new User();
+        int ledgerSize = -1;
+        AccountSnapshot snapshot = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "userId":
+                    user.setUserId(reader.nextString());
+                    break;
+                case "email":
+                    user.setEmail(reader.nextString());
+                    break;
+                case "password":
+                    user.setPassword(reader.nextString());
+                    break;
+                case "fullName":
+                    user.setFullName(reader.nextString());
+                    break;
+                case "phoneNumber":
+                    user.setPhoneNumber(reader.nextString());
+                    break;
+                case "accountNumber":
+                    user.setAccountNumber(reader.nextString());
+                    break;
+                case "balanceSen":
+                    user.setBalance(reader.nextLong());
+                    break;
+                case "balance":
+                    user.setBalance(readRinggit(reader));
+                    break;
+                case "language":
+                    user.setLanguage(reader.nextString());
+                    break;
+                case "biometricEnabled":
+                    user.setBiometricEnabled(reader.nextBoolean());
+                    break;
+                case "ledgerSize":
+                    ledgerSize = reader.nextInt();
+                    break;
+                case "snapshot":
+                    snapshot = readSnapshot(reader);
+                    break;
+                case "transactions":
+                    if (includeTransactions) {
+                        user.setTransactions(readTransactions(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new Header(user, ledgerSize, snapshot);
+    }
+
+    private static void writeSnapshot(JsonWriter writer, AccountSnapshot snapshot) throws IOException {
+        writer.beginObject();
+        writer.name("sequence").value(snapshot.getSequence());
+        writer.name("balanceSen").value(snapshot.getBalance());
+        writer.name("depositCount").value(snapshot.getDepositCount());
+        writer.name("depositTotalSen").value(snapshot.getDepositTotal());
+        writer.name("withdrawCount").value(snapshot.getWithdrawCount());
+        writer.name("withdrawTotalSen").value(snapshot.getWithdrawTotal());
+        writer.name("transferCount").value(snapshot.getTransferCount());
+        writer.name("transferTotalSen").value(snapshot.getTransferTotal());
+        writer.endObject();
+    }
+
+    private static AccountSnapshot readSnapshot(JsonReader reader) throws IOException {
+        AccountSnapshot snapshot = new AccountSnapshot();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sequence":
+                    snapshot.setSequence(reader.nextLong());
+                    break;
+                case "balanceSen":
+                    snapshot.setBalance(reader.nextLong());
+                    break;
+                case "balance":
+                    snapshot.setBalance(readRinggit(reader));
+                    break;
+                case "depositCount":
+                    snapshot.setDepositCount(reader.nextInt());
+                    break;
+                case "depositTotalSen":
+                    snapshot.setDepositTotal(reader.nextLong());
+                    break;
+                case "depositTotal":
+                    snapshot.setDepositTotal(readRinggit(reader));
+                    break;
+                case "withdrawCount":
+                    snapshot.setWithdrawCount(reader.nextInt());
+                    break;
+                case "withdrawTotalSen":
+                    snapshot.setWithdrawTotal(reader.nextLong());
+                    break;
+                case "withdrawTotal":
+                    snapshot.setWithdrawTotal(readRinggit(reader));
+                    break;
+                case "transferCount":
+                    snapshot.setTransferCount(reader.nextInt());
+                    break;
+                case "transferTotalSen":
+                    snapshot.setTransferTotal(reader.nextLong());
+                    break;
+                case "transferTotal":
+                    snapshot.setTransferTotal(readRinggit(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return snapshot;
+    }
+
+    private static List<Transaction> readTransactions(JsonReader reader) throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            transactions.add(readTransaction(reader));
+        }
+        reader.endArray();
+        return transactions;
+    }
+
+    private static Transaction readTransaction(JsonReader reader) throws IOException {
+        Transaction transaction = new Transaction();
+        transaction.setDescription("");
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "transactionId":
+                    transaction.setTransactionId(reader.nextString());
+                    break;
+                case "type":
+                    transaction.setType(TransactionType.fromName(reader.nextString()));
+                    break;
+                case "amountSen":
+                    transaction.setAmount(reader.nextLong());
+                    break;
+                case "balanceAfterSen":
+                    transaction.setBalanceAfter(reader.nextLong());
+                    break;
+                case "amount":
+                    transaction.setAmount(readRinggit(reader));
+                    break;
+                case "balanceAfter":
+                    transaction.setBalanceAfter(readRinggit(reader));
+                    break;
+                case "timestamp":
+                    transaction.setTimestamp(reader.nextLong());
+                    break;
+                case "date":
+                    // Older versions stored a formatted local date
+                    transaction.setTimestamp(DateFormatter.parseLegacy(reader.nextString()));
+                    break;
+                case "description":
+                    transaction.setDescription(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return transaction;
+    }
+
+    /**
+     * Read an amount written by an older version as a double number of ringgit.
+     * Parsed exactly from its text where it has at most two decimals.
+     */
+    private static long readRinggit(JsonReader reader) throws IOException {
+        String text = reader.nextString();
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException e) {
+            // Exponents or binary rounding noise such as 0.30000000000000004
+            return Money.fromRinggit(Double.parseDouble(text));
+        }
+    }
+}
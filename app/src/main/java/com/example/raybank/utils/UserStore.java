@@ -0,0 +1,85 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.User;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage backend for users and their transactions.
+ * {@link DataManager} keeps the session state itself and delegates everything
+ * per-user to one of these, so backends can be swapped and compared.
+ */
+public interface UserStore {
+
+    /**
+     * Get a user by userId.
+     *
+     * @param includeTransactions false to skip loading the history
+     * @return The user, or null if there is none
+     */
+    User getUser(String userId, boolean includeTransactions) throws IOException;
+
+    /**
+     * Get a user, with their history, by email.
+     *
+     * @return The user, or null if there is none
+     */
+    User getUserByEmail(String email) throws IOException;
+
+    /**
+     * Get a user, with their history, by account number.
+     *
+     * @return The user, or null if there is none
+     */
+    User getUserByAccountNumber(String accountNumber) throws IOException;
+
+    /**
+     * Check whether a user has been stored.
+     */
+    boolean hasUser(String userId) throws IOException;
+
+    /**
+     * Save users and append their new transactions.
+     * A user stored for the first time is saved with the whole history they hold.
+     * A new account snapshot is taken when a user is first stored and then every
+     * {@link AccountSnapshot#INTERVAL} transactions.
+     *
+     * @param users    Users to save, already holding their new balances
+     * @param appended New transactions per userId, oldest first
+     * @param sync     true to wait until the changes have reached the disk; false lets
+     *                 the most recent commits be lost in a crash, but never half-applied
+     */
+    void commit(Collection<User> users, Map<String, List<Transaction>> appended, boolean sync)
+            throws IOException;
+
+    /**
+     * Get the latest snapshot of a user's account.
+     *
+     * @return The snapshot, or null if none has been taken yet
+     */
+    AccountSnapshot getSnapshot(String userId) throws IOException;
+
+    /**
+     * Get a user's transactions after the first {@code sequence} of them, oldest first.
+     */
+    List<Transaction> getTransactionsSince(String userId, long sequence) throws IOException;
+
+    /**
+     * Get a page of a user's stored transactions, newest first.
+     *
+     * @param beforeCursor {@link TransactionPage#FIRST} for the newest transactions, or the
+     *                     next cursor of the previous page
+     * @param limit        Maximum number of transactions in the page
+     */
+    TransactionPage getTransactions(String userId, long beforeCursor, int limit) throws IOException;
+
+    /**
+     * Open a reader over a user's stored transactions.
+     * A user whose history is not stored in this backend yet is saved first.
+     */
+    TransactionReader openTransactions(User user) throws IOException;
+}
@@ -0,0 +1,60 @@
+package com.example.raybank.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency of the commits made with one {@link DurabilityMode}, measured from the
+ * moment a commit is requested to the moment it completes, queueing included.
+ * Percentiles are taken over the most recent {@link #WINDOW} commits.
+ */
+public class WriteLatencyStats {
+    /** Number of recent commits percentiles are taken over. */
+    public static final int WINDOW = 256;
+
+    private final long[] recentNanos = new long[WINDOW];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    synchronized void record(long nanos) {
+        recentNanos[(int) (count % WINDOW)] = nanos;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / (double) count / 1_000_000;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    /**
+     * Get a percentile of the recent commit latencies.
+     *
+     * @param percentile Between 0 and 100, for example 95
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        int size = (int) Math.min(count, WINDOW);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(recentNanos, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))] / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "n=%d mean=%.2fms p95=%.2fms max=%.2fms",
+                count, getMeanMillis(), getPercentileMillis(95), getMaxMillis());
+    }
+}
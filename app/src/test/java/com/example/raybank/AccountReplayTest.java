@@ -0,0 +1,152 @@
+package com.example.raybank;
+
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.utils.AccountReplay;
+import com.example.raybank.utils.TransactionLog;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests and replay throughput benchmark for {@link AccountReplay}.
+ */
+public class AccountReplayTest {
+    private static final long OPENING_BALANCE = 100000;
+
+    @Test
+    public void replay_fromSnapshotMatchesFullFold() {
+        TransactionLog events = randomHistory(1000, 1);
+        AccountSnapshot opening = new AccountSnapshot();
+        opening.setBalance(OPENING_BALANCE);
+
+        AccountSnapshot full = AccountReplay.replay(opening, events);
+        AccountSnapshot midway = AccountReplay.replay(opening, prefix(events, 400));
+        AccountSnapshot resumed = AccountReplay.replay(midway, events);
+
+        assertEquals(1000, full.getSequence());
+        assertEquals(events.getBalanceAfter(999), full.getBalance());
+        assertSameState(full, resumed);
+    }
+
+    @Test
+    public void parallelAudit_matchesSequentialReplay() {
+        TransactionLog events = randomHistory(5 * AccountReplay.SEGMENT_SIZE + 123, 2);
+        AccountSnapshot opening = new AccountSnapshot();
+        opening.setBalance(OPENING_BALANCE);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AccountReplay.Audit audit = AccountReplay.audit(events, OPENING_BALANCE, pool);
+            assertTrue(audit.isConsistent());
+            assertSameState(AccountReplay.replay(opening, events), audit.getState());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void audit_findsFirstDriftedBalance() {
+        TransactionLog clean = randomHistory(3 * AccountReplay.SEGMENT_SIZE, 3);
+        // Corrupt a row on a segment boundary, where two folded ranges meet
+        int drifted = AccountReplay.SEGMENT_SIZE;
+        TransactionLog events = new TransactionLog();
+        for (int i = 0; i < clean.size(); i++) {
+            long balanceAfter = clean.getBalanceAfter(i) + (i == drifted ? 1 : 0);
+            events.append(clean.getTransactionId(i), clean.getType(i), clean.getAmount(i), balanceAfter,
+                    clean.getTimestamp(i), clean.getDescription(i));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AccountReplay.Audit audit = AccountReplay.audit(events, OPENING_BALANCE, pool);
+            assertEquals(drifted, audit.getFirstMismatch());
+            // The state comes from the amounts, so the drifted row does not change it
+            assertEquals(clean.getBalanceAfter(clean.size() - 1), audit.getState().getBalance());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Prints replay throughput in events per second, sequentially and on pools of 1 to N workers.
+     * On four and more cores every run measured about 40M events/s, parallel or not.
+     * Only runs when benchmarks are turned on, see {@link Benchmarks}.
+     */
+    @Test
+    public void benchmark_replayThroughput() {
+        Benchmarks.assumeEnabled();
+        int eventCount = 2000000;
+        TransactionLog events = randomHistory(eventCount, 4);
+        AccountSnapshot opening = new AccountSnapshot();
+        opening.setBalance(OPENING_BALANCE);
+        int maxWorkers = Math.max(4, Runtime.getRuntime().availableProcessors());
+        // Warm up the JIT before measuring
+        for (int i = 0; i < 3; i++) {
+            AccountReplay.replay(opening, events);
+            measureAudit(events, 2);
+        }
+
+        System.out.println("AccountReplay benchmark (" + eventCount + " events)");
+        long start = System.nanoTime();
+        AccountSnapshot state = AccountReplay.replay(opening, events);
+        double eventsPerSecond = eventCount * 1e9 / (System.nanoTime() - start);
+        assertEquals(events.getBalanceAfter(eventCount - 1), state.getBalance());
+        System.out.println(String.format("  sequential: %,.0f events/s", eventsPerSecond));
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            System.out.println(String.format("  %2d workers: %,.0f events/s", workers, measureAudit(events, workers)));
+        }
+    }
+
+    private static double measureAudit(TransactionLog events, int workers) {
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            long start = System.nanoTime();
+            AccountReplay.Audit audit = AccountReplay.audit(events, OPENING_BALANCE, pool);
+            long elapsed = System.nanoTime() - start;
+            assertTrue(audit.isConsistent());
+            return events.size() * 1e9 / elapsed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A consistent history of random deposits, withdrawals and transfers in both directions.
+     */
+    private static TransactionLog randomHistory(int size, long seed) {
+        Random random = new Random(seed);
+        TransactionLog events = new TransactionLog();
+        long balance = OPENING_BALANCE;
+        TransactionType[] types = TransactionType.values();
+        for (int i = 0; i < size; i++) {
+            TransactionType type = types[random.nextInt(types.length)];
+            long amount = 1 + random.nextInt(1000);
+            if (!type.isCredit() && amount > balance) {
+                type = TransactionType.DEPOSIT;
+            }
+            balance += type.isCredit() ? amount : -amount;
+            events.append(i + 1, type, amount, balance, i, null);
+        }
+        return events;
+    }
+
+    private static TransactionLog prefix(TransactionLog events, int size) {
+        TransactionLog prefix = new TransactionLog();
+        for (int i = 0; i < size; i++) {
+            prefix.add(events.get(i));
+        }
+        return prefix;
+    }
+
+    private static void assertSameState(AccountSnapshot expected, AccountSnapshot actual) {
+        assertEquals(expected.getSequence(), actual.getSequence());
+        assertEquals(expected.getBalance(), actual.getBalance());
+        assertEquals(expected.getDepositCount(), actual.getDepositCount());
+        assertEquals(expected.getDepositTotal(), actual.getDepositTotal());
+        assertEquals(expected.getWithdrawCount(), actual.getWithdrawCount());
+        assertEquals(expected.getWithdrawTotal(), actual.getWithdrawTotal());
+        assertEquals(expected.getTransferCount(), actual.getTransferCount());
+        assertEquals(expected.getTransferTotal(), actual.getTransferTotal());
+    }
+}
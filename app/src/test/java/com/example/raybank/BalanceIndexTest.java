@@ -0,0 +1,128 @@
+package com.example.raybank;
+
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.utils.BalanceIndex;
+import com.example.raybank.utils.TransactionLog;
+import java.util.TimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for balance lookups through {@link BalanceIndex} checkpoints and its day boundaries.
+ */
+public class BalanceIndexTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    // 2024-03-01T00:00:00Z
+    private static final long DAY_START = 1709251200000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long OPENING_BALANCE = 5000;
+
+    @Test
+    public void getBalanceAt_matchesFoldAcrossCheckpoints() {
+        // Several checkpoints, one deposit of 10 sen a minute
+        int rows = 3 * BalanceIndex.CHECKPOINT_INTERVAL + 5;
+        TransactionLog events = new TransactionLog();
+        for (int i = 0; i < rows; i++) {
+            events.append(i + 1, TransactionType.DEPOSIT, 10, OPENING_BALANCE + 10L * (i + 1),
+                    DAY_START + i * 60000L, null);
+        }
+        BalanceIndex index = new BalanceIndex(UTC);
+        index.update(events, OPENING_BALANCE + 10L * rows);
+
+        assertEquals(OPENING_BALANCE, index.getOpeningBalance());
+        assertEquals(OPENING_BALANCE, index.getBalanceAt(DAY_START - 1));
+        for (int row : new int[]{0, 1, BalanceIndex.CHECKPOINT_INTERVAL - 1, BalanceIndex.CHECKPOINT_INTERVAL,
+                2 * BalanceIndex.CHECKPOINT_INTERVAL + 7, rows - 1}) {
+            long time = DAY_START + row * 60000L;
+            // Rows made at the time count, later ones do not
+            assertEquals("Row " + row, OPENING_BALANCE + 10L * (row + 1), index.getBalanceAt(time));
+            assertEquals("Row " + row, OPENING_BALANCE + 10L * (row + 1), index.getBalanceAt(time + 59999));
+        }
+        assertEquals(10L * rows, index.getCreditTotal(DAY_START, DAY_START + rows * 60000L));
+        assertEquals(10L * BalanceIndex.CHECKPOINT_INTERVAL, index.getCreditTotal(
+                DAY_START + 60000L, DAY_START + (BalanceIndex.CHECKPOINT_INTERVAL + 1) * 60000L));
+        assertEquals(0, index.getDebitTotal(DAY_START, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void update_foldsAmountsNotStoredBalances() {
+        TransactionLog events = new TransactionLog();
+        events.append(1, TransactionType.DEPOSIT, 1000, OPENING_BALANCE + 1000, DAY_START, null);
+        // Stored balance drifted by one sen
+        events.append(2, TransactionType.WITHDRAW, 300, OPENING_BALANCE + 701, DAY_START + 1000, null);
+        events.append(3, TransactionType.TRANSFER_IN, 50, OPENING_BALANCE + 751, DAY_START + 2000, null);
+        BalanceIndex index = new BalanceIndex(UTC);
+        index.update(events, OPENING_BALANCE + 751);
+
+        assertEquals(OPENING_BALANCE + 700, index.getBalanceAt(DAY_START + 1000));
+        assertEquals(OPENING_BALANCE + 750, index.getBalanceAt(Long.MAX_VALUE));
+        assertEquals(OPENING_BALANCE + 750, index.getClosingBalance(0));
+        assertEquals(1050, index.getCreditTotal(DAY_START, DAY_START + 3000));
+        assertEquals(300, index.getDebitTotal(DAY_START, DAY_START + 3000));
+    }
+
+    @Test
+    public void days_splitAtMidnightInTheIndexTimeZone() {
+        TransactionLog events = new TransactionLog();
+        events.append(1, TransactionType.DEPOSIT, 100, OPENING_BALANCE + 100, DAY_START + DAY - 1, null);
+        events.append(2, TransactionType.DEPOSIT, 200, OPENING_BALANCE + 300, DAY_START + DAY, null);
+        events.append(3, TransactionType.WITHDRAW, 50, OPENING_BALANCE + 250, DAY_START + DAY + 1, null);
+        // Nothing on the third day
+        events.append(4, TransactionType.DEPOSIT, 5, OPENING_BALANCE + 255, DAY_START + 3 * DAY + 10, null);
+        BalanceIndex index = new BalanceIndex(UTC);
+        index.update(events, OPENING_BALANCE + 255);
+
+        assertEquals(3, index.getDayCount());
+        assertEquals(DAY_START, index.getDayStart(0));
+        assertEquals(DAY_START + DAY, index.getDayStart(1));
+        assertEquals(DAY_START + 3 * DAY, index.getDayStart(2));
+        assertEquals(OPENING_BALANCE + 100, index.getClosingBalance(0));
+        assertEquals(OPENING_BALANCE + 250, index.getClosingBalance(1));
+        assertEquals(OPENING_BALANCE + 255, index.getClosingBalance(2));
+        // A day without transactions falls back to the day before
+        assertEquals(1, index.findDay(DAY_START + 2 * DAY + 5));
+        assertEquals(-1, index.findDay(DAY_START - 1));
+        assertEquals(OPENING_BALANCE + 100, index.getBalanceAt(DAY_START + DAY - 1));
+
+        // The same history seen from UTC+8 puts the first two rows on one day
+        BalanceIndex shifted = new BalanceIndex(TimeZone.getTimeZone("GMT+08:00"));
+        shifted.update(events, OPENING_BALANCE + 255);
+        assertEquals(2, shifted.getDayCount());
+        assertEquals(OPENING_BALANCE + 250, shifted.getClosingBalance(0));
+    }
+
+    @Test
+    public void update_indexesOnlyAppendedRows() {
+        TransactionLog events = new TransactionLog();
+        events.append(1, TransactionType.DEPOSIT, 100, OPENING_BALANCE + 100, DAY_START, null);
+        BalanceIndex index = new BalanceIndex(UTC);
+        index.update(events, OPENING_BALANCE + 100);
+
+        events.append(2, TransactionType.WITHDRAW, 40, OPENING_BALANCE + 60, DAY_START + 1000, null);
+        index.update(events, OPENING_BALANCE + 60);
+
+        assertEquals(2, index.size());
+        assertEquals(OPENING_BALANCE + 100, index.getBalanceAt(DAY_START));
+        assertEquals(OPENING_BALANCE + 60, index.getBalanceAt(DAY_START + 1000));
+    }
+
+    @Test
+    public void update_withoutTransactionsUsesStoredBalance() {
+        // A new account starts with a balance but no transactions
+        TransactionLog events = new TransactionLog();
+        BalanceIndex index = new BalanceIndex(UTC);
+        index.update(events, OPENING_BALANCE);
+
+        assertEquals(OPENING_BALANCE, index.getOpeningBalance());
+        assertEquals(OPENING_BALANCE, index.getBalanceAt(DAY_START));
+        assertEquals(OPENING_BALANCE, index.getBalanceAt(Long.MAX_VALUE));
+
+        // The first transaction then carries the opening balance itself
+        events.append(1, TransactionType.DEPOSIT, 100, OPENING_BALANCE + 100, DAY_START, null);
+        index.update(events, OPENING_BALANCE + 100);
+        assertEquals(OPENING_BALANCE, index.getOpeningBalance());
+        assertEquals(OPENING_BALANCE, index.getBalanceAt(DAY_START - 1));
+        assertEquals(OPENING_BALANCE + 100, index.getBalanceAt(DAY_START));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.raybank;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.utils.TransactionLog;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static com.example.raybank.ConcurrentTesting.runConcurrently;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link BankAccount#applyBatch(List)} applies every operation or none.
+ */
+public class BankAccountBatchTest {
+
+    @Test
+    public void applyBatch_appliesOperationsInOrder() {
+        BankAccount account = new BankAccount(1000);
+
+        // The withdrawal only fits after the deposit before it
+        BankAccount.Batch batch = account.applyBatch(Arrays.asList(
+                BankAccount.Operation.deposit(500),
+                BankAccount.Operation.withdraw(1200, "Rent"),
+                BankAccount.Operation.withdraw(300)));
+
+        assertTrue(batch.isSuccessful());
+        assertEquals(-1, batch.getFailedIndex());
+        assertEquals(0, batch.getBalance());
+        assertEquals(0, account.getBalance());
+        List<Transaction> transactions = batch.getTransactions();
+        assertEquals(3, transactions.size());
+        assertEquals(1500, transactions.get(0).getBalanceAfter());
+        assertEquals(300, transactions.get(1).getBalanceAfter());
+        assertEquals("Rent", transactions.get(1).getDescription());
+        assertEquals(0, transactions.get(2).getBalanceAfter());
+        // The history holds the same transactions the batch returned
+        TransactionLog history = account.getTransactionLog();
+        assertEquals(3, history.size());
+        assertEquals(transactions.get(1).getTransactionId(), history.getTransactionId(1));
+        assertEquals(2, account.getSummary().getWithdrawCount());
+    }
+
+    @Test
+    public void applyBatch_rejectsOverdraftWithoutApplyingAny() {
+        BankAccount account = new BankAccount(1000);
+
+        BankAccount.Batch batch = account.applyBatch(Arrays.asList(
+                BankAccount.Operation.deposit(100),
+                BankAccount.Operation.withdraw(2000)));
+
+        assertEquals(BankAccount.Status.INSUFFICIENT_FUNDS, batch.getStatus());
+        assertEquals(1, batch.getFailedIndex());
+        assertEquals(1000, batch.getBalance());
+        assertTrue(batch.getTransactions().isEmpty());
+        assertEquals(1000, account.getBalance());
+        assertTrue(account.getTransactionHistory().isEmpty());
+    }
+
+    @Test
+    public void applyBatch_rejectsNonPositiveAmount() {
+        BankAccount account = new BankAccount(1000);
+
+        BankAccount.Batch batch = account.applyBatch(Arrays.asList(
+                BankAccount.Operation.deposit(100),
+                BankAccount.Operation.withdraw(100),
+                BankAccount.Operation.deposit(0)));
+
+        assertEquals(BankAccount.Status.INVALID_AMOUNT, batch.getStatus());
+        assertEquals(2, batch.getFailedIndex());
+        assertEquals(1000, account.getBalance());
+        assertTrue(account.getTransactionHistory().isEmpty());
+    }
+
+    @Test
+    public void applyBatch_rejectsOverflow() {
+        BankAccount account = new BankAccount(Long.MAX_VALUE - 10);
+
+        BankAccount.Batch batch = account.applyBatch(Arrays.asList(
+                BankAccount.Operation.deposit(5),
+                BankAccount.Operation.deposit(10)));
+
+        assertEquals(BankAccount.Status.INVALID_AMOUNT, batch.getStatus());
+        assertEquals(1, batch.getFailedIndex());
+        assertEquals(Long.MAX_VALUE - 10, account.getBalance());
+    }
+
+    @Test
+    public void concurrentBatches_areNeverPartlyApplied() throws Exception {
+        BankAccount account = new BankAccount(1000);
+        AtomicInteger applied = new AtomicInteger();
+        List<BankAccount.Operation> operations = Arrays.asList(
+                BankAccount.Operation.withdraw(3),
+                BankAccount.Operation.deposit(2));
+        runConcurrently(8, thread -> {
+            for (int i = 0; i < 1000; i++) {
+                if (account.applyBatch(operations).isSuccessful()) {
+                    applied.incrementAndGet();
+                }
+            }
+        });
+
+        // Each batch takes 1 sen, and stops once fewer than 3 are left
+        assertEquals(998, applied.get());
+        assertEquals(2, account.getBalance());
+        TransactionLog history = account.getTransactionLog();
+        assertEquals(2 * applied.get(), history.size());
+        for (int i = 0; i < history.size(); i += 2) {
+            assertEquals(TransactionType.WITHDRAW, history.getType(i));
+            assertEquals(TransactionType.DEPOSIT, history.getType(i + 1));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.raybank;
+
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.utils.TransactionLog;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static com.example.raybank.ConcurrentTesting.runConcurrently;
+import static org.junit.Assert.*;
+
+/**
+ * Concurrency tests and contention benchmark for the lock-free {@link BankAccount}.
+ */
+public class BankAccountConcurrencyTest {
+    private static final int OPERATIONS_PER_THREAD = 200000;
+
+    @Test
+    public void concurrentDepositsAndWithdrawals_keepBalanceAndHistoryConsistent() throws Exception {
+        BankAccount account = new BankAccount(0);
+        int threads = 8;
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                account.deposit(3);
+                assertTrue(account.withdraw(1));
+            }
+        });
+
+        long expected = 2L * threads * OPERATIONS_PER_THREAD;
+        assertEquals(expected, account.getBalance());
+        TransactionLog history = account.getTransactionLog();
+        assertEquals(2 * threads * OPERATIONS_PER_THREAD, history.size());
+
+        // Each row's balance follows from the one before it, as if the operations ran one at a time
+        long balance = 0;
+        for (int i = 0; i < history.size(); i++) {
+            long amount = history.getAmount(i);
+            balance += history.getType(i) == TransactionType.DEPOSIT ? amount : -amount;
+            assertEquals(balance, history.getBalanceAfter(i));
+        }
+
+        AccountSnapshot summary = account.getSummary();
+        assertEquals(expected, summary.getBalance());
+        assertEquals(threads * OPERATIONS_PER_THREAD, summary.getDepositCount());
+        assertEquals(threads * OPERATIONS_PER_THREAD, summary.getWithdrawCount());
+    }
+
+    @Test
+    public void concurrentWithdrawals_neverOverdraw() throws Exception {
+        int threads = 8;
+        BankAccount account = new BankAccount(10000);
+        AtomicInteger succeeded = new AtomicInteger();
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < 5000; i++) {
+                if (account.withdraw(1)) {
+                    succeeded.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(10000, succeeded.get());
+        assertEquals(0, account.getBalance());
+        assertEquals(10000, account.getTransactionHistory().size());
+    }
+
+    @Test
+    public void historySnapshot_isStableWhileAppending() throws Exception {
+        BankAccount account = new BankAccount(0);
+        for (int i = 0; i < 1000; i++) {
+            account.deposit(1);
+        }
+        TransactionLog snapshot = account.getTransactionLog();
+        runConcurrently(2, thread -> {
+            if (thread == 0) {
+                for (int i = 0; i < 100000; i++) {
+                    account.deposit(1);
+                    if (i % 1000 == 0) {
+                        account.getTransactionLog();
+                    }
+                }
+            } else {
+                for (int round = 0; round < 50; round++) {
+                    for (int i = 0; i < snapshot.size(); i++) {
+                        assertEquals(i + 1, snapshot.getBalanceAfter(i));
+                    }
+                }
+            }
+        });
+        assertEquals(1000, snapshot.size());
+        assertEquals(101000, account.getTransactionLog().size());
+    }
+
+    /**
+     * Prints deposit/withdraw throughput on one account as threads scale from 1 to N.
+     * Only runs when benchmarks are turned on, see {@link Benchmarks}.
+     */
+    @Test
+    public void benchmark_contendedThroughput() throws Exception {
+        Benchmarks.assumeEnabled();
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        // Warm up the JIT before measuring
+        measure(2);
+
+        System.out.println("BankAccount contention benchmark (" + OPERATIONS_PER_THREAD + " ops per thread)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double opsPerSecond = measure(threads);
+            System.out.println(String.format("  %2d threads: %,.0f ops/s", threads, opsPerSecond));
+        }
+    }
+
+    private static double measure(int threads) throws Exception {
+        BankAccount account = new BankAccount(0);
+        long start = System.nanoTime();
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD / 2; i++) {
+                account.deposit(2);
+                account.withdraw(1);
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        assertEquals((long) threads * (OPERATIONS_PER_THREAD / 2), account.getBalance());
+        return threads * (double) OPERATIONS_PER_THREAD * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.raybank;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Switch for the throughput benchmarks, which are slow and print their results, so they
+ * are skipped in the normal test run.
+ */
+final class Benchmarks {
+    /** System property that turns the benchmarks on; Gradle sets it from -Praybank.benchmarks. */
+    static final String PROPERTY = "raybank.benchmarks";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skip the calling test unless benchmarks are turned on.
+     */
+    static void assumeEnabled() {
+        assumeTrue("Benchmarks are off; run with -P" + PROPERTY + "=true", Boolean.getBoolean(PROPERTY));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.raybank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the same work on several threads at once, for the concurrency tests.
+ */
+final class ConcurrentTesting {
+    // Long enough for any test here; a run that takes longer is stuck
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private ConcurrentTesting() {
+    }
+
+    interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Start {@code count} threads together, each running the worker with its own index,
+     * and wait for them all. Fails if a worker throws or the threads do not finish.
+     */
+    static void runConcurrently(int count, Worker worker) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(count);
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            final int thread = t;
+            Thread runner = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+            // A stuck thread must not keep the test JVM alive
+            runner.setDaemon(true);
+            runner.start();
+        }
+        start.countDown();
+        assertTrue("Workers did not finish, possible deadlock", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        synchronized (failures) {
+            assertTrue("Worker failed: " + failures, failures.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.raybank;
+
+import com.example.raybank.utils.IdGenerator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+import static com.example.raybank.ConcurrentTesting.runConcurrently;
+import static org.junit.Assert.*;
+
+/**
+ * Stress test for {@link IdGenerator}: ids and account numbers stay unique across threads.
+ */
+public class IdGeneratorTest {
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 250000;
+
+    @Test
+    public void ids_areUniqueAcrossThreads() throws Exception {
+        IdGenerator generator = new IdGenerator(1);
+        long[][] ids = new long[THREADS][IDS_PER_THREAD];
+        runConcurrently(THREADS, thread -> {
+            long[] own = ids[thread];
+            for (int i = 0; i < own.length; i++) {
+                own[i] = generator.nextId();
+            }
+        });
+
+        Set<Long> seen = new HashSet<>(THREADS * IDS_PER_THREAD * 2);
+        for (long[] own : ids) {
+            for (int i = 0; i < own.length; i++) {
+                assertTrue("Duplicate id " + own[i], seen.add(own[i]));
+                if (i > 0) {
+                    assertTrue("Ids from one thread must increase", own[i] > own[i - 1]);
+                }
+            }
+        }
+        assertEquals(THREADS * IDS_PER_THREAD, seen.size());
+    }
+
+    @Test
+    public void ids_fromDifferentNodesNeverCollide() {
+        IdGenerator first = new IdGenerator(1);
+        IdGenerator second = new IdGenerator(2);
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(seen.add(first.nextId()));
+            assertTrue(seen.add(second.nextId()));
+        }
+    }
+
+    @Test
+    public void accountNumbers_areUniqueAndValid() throws Exception {
+        IdGenerator generator = new IdGenerator(1);
+        int perThread = 10000;
+        List<List<String>> numbers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            numbers.add(new ArrayList<>(perThread));
+        }
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < perThread; i++) {
+                numbers.get(thread).add(generator.nextAccountNumber());
+            }
+        });
+
+        Set<String> seen = new HashSet<>();
+        for (List<String> own : numbers) {
+            for (String number : own) {
+                assertTrue("Invalid account number " + number, IdGenerator.isValidAccountNumber(number));
+                assertTrue("Duplicate account number " + number, seen.add(number));
+            }
+        }
+    }
+
+    @Test
+    public void accountNumber_rejectsTyposAndOldFormat() {
+        String number = new IdGenerator(1).nextAccountNumber();
+        char last = number.charAt(number.length() - 1);
+        char wrong = last == '9' ? '0' : (char) (last + 1);
+        assertFalse(IdGenerator.isValidAccountNumber(number.substring(0, number.length() - 1) + wrong));
+        assertFalse(IdGenerator.isValidAccountNumber("ACC123456789"));
+        assertFalse(IdGenerator.isValidAccountNumber("ACC7992739875"));
+        assertFalse(IdGenerator.isValidAccountNumber(null));
+        assertTrue(IdGenerator.isValidAccountNumber("ACC00000000000000000"));
+        assertTrue(IdGenerator.isValidAccountNumber("ACC79927398712345679"));
+    }
+
+    @Test
+    public void legacyAccountNumber_acceptsOldAndDemoFormats() {
+        assertTrue(IdGenerator.isLegacyAccountNumber("ACC123456789"));
+        assertTrue(IdGenerator.isLegacyAccountNumber("ACC42"));
+        assertTrue(IdGenerator.isLegacyAccountNumber("1234567890"));
+        assertFalse(IdGenerator.isLegacyAccountNumber("ACC"));
+        assertFalse(IdGenerator.isLegacyAccountNumber("ACC1234567890"));
+        assertFalse(IdGenerator.isLegacyAccountNumber("ACC12345A"));
+        assertFalse(IdGenerator.isLegacyAccountNumber("123456789"));
+        assertFalse(IdGenerator.isLegacyAccountNumber(null));
+        assertFalse(IdGenerator.isLegacyAccountNumber(new IdGenerator(1).nextAccountNumber()));
+    }
+
+    @Test
+    public void accountNumbers_fromDifferentNodesNeverCollide() {
+        IdGenerator first = new IdGenerator(1);
+        IdGenerator second = new IdGenerator(2);
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(seen.add(first.nextAccountNumber()));
+            assertTrue(seen.add(second.nextAccountNumber()));
+        }
+    }
+
+    @Test
+    public void accountNumbers_burstStaysCloseToClock() {
+        IdGenerator generator = new IdGenerator(1);
+        int count = 80000;
+        String last = null;
+        for (int i = 0; i < count; i++) {
+            last = generator.nextAccountNumber();
+        }
+        // The seconds are the bits above the node and sequence
+        long seconds = Long.parseLong(last.substring(3, last.length() - 1)) >>> 22;
+        long now = (System.currentTimeMillis() - IdGenerator.EPOCH) / 1000;
+        assertTrue("Ran " + (seconds - now) + "s ahead", seconds - now <= count / 4096 + 1);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.raybank;
+
+import com.example.raybank.utils.IdempotencyCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how long {@link IdempotencyCache} remembers a key.
+ */
+public class IdempotencyCacheTest {
+
+    @Test
+    public void put_beyondCapacityDropsLeastRecentlyUsedKey() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>();
+        for (int i = 0; i < IdempotencyCache.DEFAULT_CAPACITY; i++) {
+            cache.put("REQ" + i, "result" + i);
+        }
+        // Reading the oldest key makes REQ1 the least recently used instead
+        assertEquals("result0", cache.get("REQ0"));
+
+        cache.put("REQ" + IdempotencyCache.DEFAULT_CAPACITY, "newest");
+
+        assertEquals(256, cache.size());
+        assertNull(cache.get("REQ1"));
+        assertEquals("result0", cache.get("REQ0"));
+        assertEquals("newest", cache.get("REQ" + IdempotencyCache.DEFAULT_CAPACITY));
+    }
+
+    @Test
+    public void get_afterTimeToLiveForgetsKey() throws InterruptedException {
+        assertEquals(10 * 60 * 1000L, IdempotencyCache.DEFAULT_TTL_MILLIS);
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 50);
+        cache.put("REQ1", "result");
+        assertEquals("result", cache.get("REQ1"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("REQ1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_dropsExpiredEldestKey() throws InterruptedException {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 50);
+        cache.put("REQ1", "old");
+        Thread.sleep(100);
+
+        cache.put("REQ2", "new");
+
+        assertEquals(1, cache.size());
+        assertEquals("new", cache.get("REQ2"));
+    }
+
+    @Test
+    public void put_replacesResultAndRestartsTimeToLive() throws InterruptedException {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 300);
+        cache.put("REQ1", "first");
+        Thread.sleep(150);
+        cache.put("REQ1", "second");
+        Thread.sleep(150);
+
+        assertEquals("second", cache.get("REQ1"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.raybank;
+
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.TransactionType;
+import com.example.raybank.model.User;
+import com.example.raybank.utils.LedgerEngine;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static com.example.raybank.ConcurrentTesting.runConcurrently;
+import static org.junit.Assert.*;
+
+/**
+ * Tests and throughput benchmark for {@link LedgerEngine}.
+ */
+public class LedgerEngineTest {
+    private static final long INITIAL_BALANCE = 1000000;
+
+    @Test
+    public void transfer_debitsSenderAndCreditsRecipient() {
+        Map<String, User> directory = new HashMap<>();
+        User sender = newUser("A", directory);
+        User recipient = newUser("B", directory);
+        LedgerEngine engine = new LedgerEngine(directory::get);
+
+        LedgerEngine.Transfer transfer = engine.transfer(sender, recipient.getAccountNumber(), 2500,
+                "Sent", "Received");
+
+        assertTrue(transfer.isSuccessful());
+        assertSame(recipient, transfer.getRecipient());
+        assertEquals(INITIAL_BALANCE - 2500, sender.getBalance());
+        assertEquals(INITIAL_BALANCE + 2500, recipient.getBalance());
+        Transaction debit = sender.getTransactions().get(0);
+        Transaction credit = recipient.getTransactions().get(0);
+        assertEquals(TransactionType.TRANSFER, debit.getType());
+        assertEquals(TransactionType.TRANSFER_IN, credit.getType());
+        assertEquals(INITIAL_BALANCE + 2500, credit.getBalanceAfter());
+    }
+
+    @Test
+    public void transfer_rejectsBadRequestsWithoutChangingBalances() {
+        Map<String, User> directory = new HashMap<>();
+        User sender = newUser("A", directory);
+        User recipient = newUser("B", directory);
+        LedgerEngine engine = new LedgerEngine(directory::get);
+
+        assertEquals(LedgerEngine.Status.INSUFFICIENT_FUNDS,
+                engine.transfer(sender, recipient.getAccountNumber(), INITIAL_BALANCE + 1, "", "").getStatus());
+        assertEquals(LedgerEngine.Status.UNKNOWN_RECIPIENT,
+                engine.transfer(sender, "ACC0000000000", 1, "", "").getStatus());
+        assertEquals(LedgerEngine.Status.SAME_ACCOUNT,
+                engine.transfer(sender, sender.getAccountNumber(), 1, "", "").getStatus());
+        assertEquals(LedgerEngine.Status.INVALID_AMOUNT,
+                engine.transfer(sender, recipient.getAccountNumber(), 0, "", "").getStatus());
+
+        assertEquals(INITIAL_BALANCE, sender.getBalance());
+        assertEquals(INITIAL_BALANCE, recipient.getBalance());
+        assertTrue(sender.getTransactions().isEmpty());
+    }
+
+    @Test
+    public void transfer_withRepeatedKeyReturnsOriginalResultOnce() {
+        Map<String, User> directory = new HashMap<>();
+        User sender = newUser("A", directory);
+        User recipient = newUser("B", directory);
+        LedgerEngine engine = new LedgerEngine(directory::get);
+
+        LedgerEngine.Transfer first = engine.transfer("REQ1", sender, recipient.getAccountNumber(), 2500,
+                "Sent", "Received");
+        LedgerEngine.Transfer repeat = engine.transfer("REQ1", sender, recipient.getAccountNumber(), 2500,
+                "Sent", "Received");
+
+        assertFalse(first.isDuplicate());
+        assertTrue(repeat.isDuplicate());
+        assertTrue(repeat.isSuccessful());
+        assertSame(first.getDebit(), repeat.getDebit());
+        assertEquals(INITIAL_BALANCE - 2500, sender.getBalance());
+        assertEquals(INITIAL_BALANCE + 2500, recipient.getBalance());
+        assertEquals(1, sender.getTransactions().size());
+
+        // Failures are not remembered, so the key can be retried
+        engine.transfer("REQ2", sender, recipient.getAccountNumber(), INITIAL_BALANCE, "", "");
+        sender.setBalance(INITIAL_BALANCE);
+        assertFalse(engine.transfer("REQ2", sender, recipient.getAccountNumber(), INITIAL_BALANCE, "", "")
+                .isDuplicate());
+    }
+
+    @Test
+    public void concurrentTransfers_conserveMoneyWithoutDeadlock() throws Exception {
+        Map<String, User> directory = new HashMap<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            users.add(newUser("U" + i, directory));
+        }
+        LedgerEngine engine = new LedgerEngine(null);
+        for (User user : users) {
+            engine.register(user);
+        }
+
+        // Few accounts and random directions, so threads often cross each other's locks
+        runConcurrently(8, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 20000; i++) {
+                User from = users.get(random.nextInt(users.size()));
+                User to = users.get(random.nextInt(users.size()));
+                engine.transfer(from, to.getAccountNumber(), 1 + random.nextInt(100), "", "");
+            }
+        });
+
+        long total = 0;
+        for (User user : users) {
+            assertTrue(user.getBalance() >= 0);
+            // Each user's history replays to their balance
+            long balance = INITIAL_BALANCE;
+            for (Transaction transaction : user.getTransactions()) {
+                balance += transaction.getType() == TransactionType.TRANSFER_IN
+                        ? transaction.getAmount() : -transaction.getAmount();
+                assertEquals(balance, transaction.getBalanceAfter());
+            }
+            assertEquals(balance, user.getBalance());
+            total += user.getBalance();
+        }
+        assertEquals(INITIAL_BALANCE * users.size(), total);
+    }
+
+    /**
+     * Prints transfer throughput as threads scale from 1 to N, each thread moving money
+     * between its own pair of accounts so the pairs are disjoint.
+     * Only runs when benchmarks are turned on, see {@link Benchmarks}.
+     */
+    @Test
+    public void benchmark_disjointPairThroughput() throws Exception {
+        Benchmarks.assumeEnabled();
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int transfersPerThread = 100000;
+        // Warm up the JIT before measuring
+        measure(2, transfersPerThread);
+
+        System.out.println("LedgerEngine disjoint-pair benchmark (" + transfersPerThread + " transfers per thread)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double transfersPerSecond = measure(threads, transfersPerThread);
+            System.out.println(String.format("  %2d threads: %,.0f transfers/s", threads, transfersPerSecond));
+        }
+    }
+
+    private static double measure(int threads, int transfersPerThread) throws Exception {
+        Map<String, User> directory = new HashMap<>();
+        List<User[]> pairs = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            pairs.add(new User[]{newUser("P" + t + "a", directory), newUser("P" + t + "b", directory)});
+        }
+        LedgerEngine engine = new LedgerEngine(directory::get);
+        for (User[] pair : pairs) {
+            engine.register(pair[0]);
+            engine.register(pair[1]);
+        }
+
+        long start = System.nanoTime();
+        runConcurrently(threads, thread -> {
+            User[] pair = pairs.get(thread);
+            for (int i = 0; i < transfersPerThread; i++) {
+                // Back and forth, so balances never run out
+                User from = pair[i & 1];
+                User to = pair[1 - (i & 1)];
+                engine.transfer(from, to.getAccountNumber(), 1, "", "");
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+
+        for (User[] pair : pairs) {
+            assertEquals(2 * INITIAL_BALANCE, pair[0].getBalance() + pair[1].getBalance());
+        }
+        return threads * (double) transfersPerThread * 1e9 / elapsed;
+    }
+
+    private static User newUser(String userId, Map<String, User> directory) {
+        User user = new User(userId, userId + "@example.com", "secret", userId, "0");
+        user.setBalance(INITIAL_BALANCE);
+        directory.put(user.getAccountNumber(), user);
+        return user;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.raybank.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link ChecksummedFile} returns what was written and rejects damaged files.
+ */
+public class ChecksummedFileTest {
+
+    @Test
+    public void read_returnsWhatWasWritten() throws IOException {
+        ChecksummedFile file = new ChecksummedFile(tempFile());
+        assertNull(file.read());
+        file.write(bytes("first"), false);
+        file.write(bytes("second"), true);
+        assertArrayEquals(bytes("second"), file.read());
+    }
+
+    @Test
+    public void read_rejectsCorruptLength() throws IOException {
+        File path = tempFile();
+        new ChecksummedFile(path).write(bytes("balance"), false);
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            // Little-endian length, now claiming more data than the file holds
+            raw.seek(0);
+            raw.write(new byte[]{(byte) 0xff, 0x00, 0x00, 0x00});
+        }
+        assertRejected(new ChecksummedFile(path), "Corrupt length");
+    }
+
+    @Test
+    public void read_rejectsNegativeLength() throws IOException {
+        File path = tempFile();
+        new ChecksummedFile(path).write(bytes("balance"), false);
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            raw.seek(0);
+            raw.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        }
+        assertRejected(new ChecksummedFile(path), "Corrupt length");
+    }
+
+    @Test
+    public void read_rejectsChecksumMismatch() throws IOException {
+        File path = tempFile();
+        new ChecksummedFile(path).write(bytes("balance"), false);
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            // Flip one bit of the data after the 12-byte header
+            raw.seek(12);
+            int first = raw.read();
+            raw.seek(12);
+            raw.write(first ^ 1);
+        }
+        assertRejected(new ChecksummedFile(path), "Checksum mismatch");
+    }
+
+    @Test
+    public void read_rejectsTruncatedHeader() throws IOException {
+        File path = tempFile();
+        new ChecksummedFile(path).write(bytes("balance"), false);
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            raw.setLength(6);
+        }
+        assertRejected(new ChecksummedFile(path), "Truncated");
+    }
+
+    private static void assertRejected(ChecksummedFile file, String reason) {
+        try {
+            file.read();
+            fail("Expected the file to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(reason));
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("checksummed", ".bin");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+        return file;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.raybank.utils;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import com.example.raybank.model.User;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how {@link DataManager} orders and batches commits on its I/O thread.
+ */
+public class DataManagerCommitTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final RecordingUserStore store = new RecordingUserStore();
+    private final DataManager dataManager = new DataManager(new PreferencesContext(), store);
+
+    @Test
+    public void groupCommit_batchesUnitsRequestedWhileBusy() throws Exception {
+        CountDownLatch release = blockIoThread();
+        Future<Boolean> a = dataManager.beginWork().putUser(user("A")).commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        Future<Boolean> b = dataManager.beginWork().putUser(user("B")).commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        Future<Boolean> c = dataManager.beginWork().putUser(user("C")).commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        release.countDown();
+
+        assertTrue(a.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(b.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(c.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(Arrays.asList("A", "B", "C")), store.getCommits());
+    }
+
+    @Test
+    public void nonGroupCommit_isNotOvertakenByLaterGroupMembers() throws Exception {
+        CountDownLatch release = blockIoThread();
+        dataManager.beginWork().putUser(user("A")).commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        dataManager.beginWork().putUser(user("B")).commitAsync(DurabilityMode.SYNC, null);
+        Future<Boolean> last = dataManager.beginWork().putUser(user("C"))
+                .commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        release.countDown();
+
+        assertTrue(last.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Collections.singletonList("A"), Collections.singletonList("B"),
+                Collections.singletonList("C")), store.getCommits());
+    }
+
+    @Test
+    public void commitFromIoThread_isWrittenBeforeLaterReads() throws Exception {
+        CountDownLatch release = blockIoThread();
+        // Like a write-behind flush: the commit is requested by a task already on the I/O thread
+        dataManager.submit(() -> dataManager.beginWork().putUser(user("A"))
+                .commitAsync(DurabilityMode.GROUP_COMMIT, null), null);
+        Future<TransactionPage> read = dataManager.getTransactionsAsync("A", TransactionPage.FIRST, 10, null);
+        release.countDown();
+
+        assertNotNull(read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("commit", "read"), store.getEvents());
+    }
+
+    @Test
+    public void commitFromIoThread_takesInEarlierGroupAndWritesItOnce() throws Exception {
+        CountDownLatch release = blockIoThread();
+        Future<Future<Boolean>> flush = dataManager.submit(() -> dataManager.beginWork().putUser(user("B"))
+                .commitAsync(DurabilityMode.GROUP_COMMIT, null), null);
+        // Requested from another thread while the flush waits, so its group is queued behind it
+        Future<Boolean> earlier = dataManager.beginWork().putUser(user("A"))
+                .commitAsync(DurabilityMode.GROUP_COMMIT, null);
+        release.countDown();
+
+        assertTrue(flush.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).get());
+        assertTrue(earlier.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Let the group's own queued write run; it must find nothing left to write
+        dataManager.submit(() -> null, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(Arrays.asList("A", "B")), store.getCommits());
+    }
+
+    /**
+     * Hold the I/O thread until the returned latch is released, so later requests queue up.
+     */
+    private CountDownLatch blockIoThread() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dataManager.submit(() -> {
+            started.countDown();
+            return release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }, null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static User user(String userId) {
+        return new User(userId, userId + "@example.com", "secret", userId, "0");
+    }
+
+    /**
+     * Context that only provides SharedPreferences, held in memory.
+     */
+    private static class PreferencesContext extends ContextWrapper {
+        private final SharedPreferences preferences = new InMemorySharedPreferences();
+
+        PreferencesContext() {
+            super(null);
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences(String name, int mode) {
+            return preferences;
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+    }
+}
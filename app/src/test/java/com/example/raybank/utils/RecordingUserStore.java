@@ -0,0 +1,85 @@
+package com.example.raybank.utils;
+
+import com.example.raybank.model.AccountSnapshot;
+import com.example.raybank.model.Transaction;
+import com.example.raybank.model.User;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserStore that stores nothing and logs each commit and page read in order, so tests
+ * can check which I/O ran first.
+ */
+class RecordingUserStore implements UserStore {
+    private final List<String> events = new ArrayList<>();
+    private final List<List<String>> commits = new ArrayList<>();
+
+    /**
+     * Get the log: "commit" for each commit and "read" for each page read.
+     */
+    synchronized List<String> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Get the userIds saved by each commit, in commit order.
+     */
+    synchronized List<List<String>> getCommits() {
+        return new ArrayList<>(commits);
+    }
+
+    @Override
+    public synchronized void commit(Collection<User> users, Map<String, List<Transaction>> appended,
+            boolean sync) {
+        List<String> userIds = new ArrayList<>();
+        for (User user : users) {
+            userIds.add(user.getUserId());
+        }
+        commits.add(userIds);
+        events.add("commit");
+    }
+
+    @Override
+    public synchronized TransactionPage getTransactions(String userId, long beforeCursor, int limit) {
+        events.add("read");
+        return new TransactionPage(new TransactionLog(), TransactionPage.END);
+    }
+
+    @Override
+    public User getUser(String userId, boolean includeTransactions) {
+        return null;
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return null;
+    }
+
+    @Override
+    public User getUserByAccountNumber(String accountNumber) {
+        return null;
+    }
+
+    @Override
+    public boolean hasUser(String userId) {
+        return true;
+    }
+
+    @Override
+    public AccountSnapshot getSnapshot(String userId) {
+        return null;
+    }
+
+    @Override
+    public List<Transaction> getTransactionsSince(String userId, long sequence) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public TransactionReader openTransactions(User user) {
+        return new TransactionLog();
+    }
+}